@@ -0,0 +1,153 @@
+package software.sitb.spring.cache.memcached.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cache.Cache;
+import software.sitb.spring.cache.memcached.MemcachedBuilder;
+import software.sitb.spring.cache.memcached.MemcachedCache;
+import software.sitb.spring.cache.memcached.MemcachedCacheManager;
+import software.sitb.spring.cache.memcached.MemcachedConfig;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MemcachedCache 的吞吐量和延迟基准测试，运行在进程内的 {@link StandInMemcachedServer} 上。
+ * <p>
+ * 运行：{@code ./gradlew :cache:jmh -PjmhThreads=8}
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MemcachedCacheBenchmark {
+
+    private static final int KEY_COUNT = 10_000;
+
+    private static final int BATCH_SIZE = 100;
+
+    /**
+     * key的长度，超过200的key会被hash
+     */
+    @Param({"16", "300"})
+    public int keySize;
+
+    /**
+     * 值的字节数
+     */
+    @Param({"128", "16384"})
+    public int valueSize;
+
+    /**
+     * 替身服务器每次响应的延迟，单位微秒
+     */
+    @Param({"0", "200"})
+    public long latencyMicros;
+
+    /**
+     * 进程内缓存最大条目数，0表示不启用
+     */
+    @Param({"0"})
+    public int nearCacheSize;
+
+    private StandInMemcachedServer server;
+
+    private MemcachedCacheManager cacheManager;
+
+    private MemcachedCache cache;
+
+    private String[] keys;
+
+    private byte[] value;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = new StandInMemcachedServer(latencyMicros);
+        MemcachedConfig config = new MemcachedConfig();
+        config.setConnectString(server.getConnectString());
+        config.setConnectionPoolSize(1);
+        config.setConnectTimeout(1000);
+        config.setFailureMode(false);
+        config.setWeights(1);
+        config.setSharedClient(true);
+        if (nearCacheSize > 0) {
+            config.setNearCacheMaximumSize(nearCacheSize);
+        }
+        cacheManager = new MemcachedCacheManager(new MemcachedBuilder(config));
+        cache = (MemcachedCache) cacheManager.getCache("benchmark");
+
+        value = new byte[valueSize];
+        ThreadLocalRandom.current().nextBytes(value);
+        keys = new String[KEY_COUNT];
+        Map<String, Object> values = new HashMap<>(KEY_COUNT);
+        for (int i = 0; i < KEY_COUNT; i++) {
+            keys[i] = key(i);
+            values.put(keys[i], value);
+        }
+        cache.putAll(values);
+        // noreply 写入没有响应，读一次确认写入完成
+        cache.get(keys[KEY_COUNT - 1]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        cacheManager.close();
+        server.close();
+    }
+
+    @Benchmark
+    public Cache.ValueWrapper get() {
+        return cache.get(randomKey());
+    }
+
+    @Benchmark
+    public void put() {
+        cache.put(randomKey(), value);
+    }
+
+    @Benchmark
+    public Map<String, Object> getAll() {
+        List<String> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch.add(randomKey());
+        }
+        return cache.getAll(batch);
+    }
+
+    @Benchmark
+    public void clear() {
+        cache.clear();
+    }
+
+    private String randomKey() {
+        return keys[ThreadLocalRandom.current().nextInt(KEY_COUNT)];
+    }
+
+    private String key(int index) {
+        StringBuilder builder = new StringBuilder(keySize).append(index).append(':');
+        while (builder.length() < keySize) {
+            builder.append('k');
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,656 @@
+package software.sitb.spring.cache.memcached.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 进程内的memcached替身，实现基准测试用到的二进制协议命令，以及 meta 文本协议的 mg/ms/md/mn
+ * （包括失效标记 X、加载权 W/Z 和占位值）。连接发送的第一个字节决定使用哪种协议。
+ * <p>
+ * 每次把响应刷新到网络前暂停 {@code latencyMicros} 微秒，模拟一次网络往返的延迟；
+ * 流水线发送的多个命令只有一次延迟，与真实网络一致。
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+public class StandInMemcachedServer implements Closeable {
+
+    private static final byte REQUEST_MAGIC = (byte) 0x80;
+    private static final byte RESPONSE_MAGIC = (byte) 0x81;
+
+    private static final int GET = 0x00;
+    private static final int SET = 0x01;
+    private static final int ADD = 0x02;
+    private static final int REPLACE = 0x03;
+    private static final int DELETE = 0x04;
+    private static final int INCREMENT = 0x05;
+    private static final int DECREMENT = 0x06;
+    private static final int QUIT = 0x07;
+    private static final int FLUSH = 0x08;
+    private static final int GETQ = 0x09;
+    private static final int NOOP = 0x0a;
+    private static final int VERSION = 0x0b;
+    private static final int GETK = 0x0c;
+    private static final int GETKQ = 0x0d;
+    private static final int APPEND = 0x0e;
+    private static final int PREPEND = 0x0f;
+    private static final int STAT = 0x10;
+    private static final int SETQ = 0x11;
+    private static final int ADDQ = 0x12;
+    private static final int REPLACEQ = 0x13;
+    private static final int DELETEQ = 0x14;
+    private static final int INCREMENTQ = 0x15;
+    private static final int DECREMENTQ = 0x16;
+    private static final int QUITQ = 0x17;
+    private static final int FLUSHQ = 0x18;
+    private static final int APPENDQ = 0x19;
+    private static final int PREPENDQ = 0x1a;
+    private static final int TOUCH = 0x1c;
+    private static final int GAT = 0x1d;
+    private static final int GATQ = 0x1e;
+
+    private static final short STATUS_OK = 0x00;
+    private static final short STATUS_KEY_NOT_FOUND = 0x01;
+    private static final short STATUS_KEY_EXISTS = 0x02;
+    private static final short STATUS_NOT_STORED = 0x05;
+    private static final short STATUS_NON_NUMERIC = 0x06;
+    private static final short STATUS_UNKNOWN_COMMAND = 0x81;
+
+    private static final long RELATIVE_EXPIRATION_LIMIT = 60L * 60 * 24 * 30;
+
+    private final Map<String, Item> items = new ConcurrentHashMap<>();
+
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong casSequence = new AtomicLong();
+
+    private final ServerSocket serverSocket;
+
+    private volatile long latencyNanos;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param latencyMicros 每次响应的延迟，单位微秒
+     */
+    public StandInMemcachedServer(long latencyMicros) throws IOException {
+        this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+        this.serverSocket = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::accept, "memcached-stand-in-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * @return 可用于 MemcachedConfig.connectString 的地址
+     */
+    public String getConnectString() {
+        InetSocketAddress address = (InetSocketAddress) serverSocket.getLocalSocketAddress();
+        return address.getAddress().getHostAddress() + ":" + address.getPort();
+    }
+
+    /**
+     * 运行期间调整响应延迟，用于模拟节点变慢
+     *
+     * @param latencyMicros 每次响应的延迟，单位微秒
+     */
+    public void setLatencyMicros(long latencyMicros) {
+        this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverSocket.close();
+        for (Socket socket : connections) {
+            socket.close();
+        }
+    }
+
+    private void accept() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.add(socket);
+                Thread worker = new Thread(() -> serve(socket), "memcached-stand-in-" + socket.getPort());
+                worker.setDaemon(true);
+                worker.start();
+            } catch (IOException e) {
+                if (running) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 64 * 1024));
+             OutputStream out = new BufferedOutputStream(s.getOutputStream(), 64 * 1024)) {
+            in.mark(1);
+            int first = in.read();
+            if (first < 0) {
+                return;
+            }
+            in.reset();
+            if ((byte) first != REQUEST_MAGIC) {
+                serveMeta(in, out);
+                return;
+            }
+            byte[] header = new byte[24];
+            while (running) {
+                in.readFully(header);
+                ByteBuffer h = ByteBuffer.wrap(header);
+                if (h.get() != REQUEST_MAGIC) {
+                    return;
+                }
+                Request request = new Request();
+                request.opcode = h.get() & 0xFF;
+                int keyLength = h.getShort() & 0xFFFF;
+                int extrasLength = h.get() & 0xFF;
+                h.get();
+                h.getShort();
+                int bodyLength = h.getInt();
+                request.opaque = h.getInt();
+                request.cas = h.getLong();
+                byte[] body = new byte[bodyLength];
+                in.readFully(body);
+                request.extras = ByteBuffer.wrap(body, 0, extrasLength).slice();
+                request.key = new String(body, extrasLength, keyLength, StandardCharsets.UTF_8);
+                request.value = new byte[bodyLength - extrasLength - keyLength];
+                System.arraycopy(body, extrasLength + keyLength, request.value, 0, request.value.length);
+
+                if (!handle(request, out)) {
+                    out.flush();
+                    return;
+                }
+                if (in.available() == 0) {
+                    if (latencyNanos > 0) {
+                        LockSupport.parkNanos(latencyNanos);
+                    }
+                    out.flush();
+                }
+            }
+        } catch (EOFException ignored) {
+        } catch (IOException e) {
+            if (running) {
+                e.printStackTrace();
+            }
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    private void serveMeta(DataInputStream in, OutputStream out) throws IOException {
+        while (running) {
+            String line = readLine(in);
+            if (null == line) {
+                return;
+            }
+            String[] tokens = line.split(" ");
+            switch (tokens[0]) {
+                case "mg":
+                    metaGet(tokens, out);
+                    break;
+                case "ms":
+                    metaSet(tokens, in, out);
+                    break;
+                case "md":
+                    metaDelete(tokens, out);
+                    break;
+                case "mn":
+                    out.write("MN\r\n".getBytes(StandardCharsets.US_ASCII));
+                    break;
+                default:
+                    out.write("ERROR\r\n".getBytes(StandardCharsets.US_ASCII));
+                    break;
+            }
+            if (in.available() == 0) {
+                if (latencyNanos > 0) {
+                    LockSupport.parkNanos(latencyNanos);
+                }
+                out.flush();
+            }
+        }
+    }
+
+    private void metaGet(String[] tokens, OutputStream out) throws IOException {
+        Map<Character, String> flags = metaFlags(tokens, 2);
+        String key = metaKey(tokens[1], flags);
+        boolean win = false;
+        Item item;
+        synchronized (items) {
+            item = live(key);
+            if (null == item && flags.containsKey('N')) {
+                item = new Item(0, expireAt(Integer.parseInt(flags.get('N'))), casSequence.incrementAndGet(), new byte[0], false, true);
+                items.put(key, item);
+                win = true;
+            } else if (null != item) {
+                if (item.stale && !item.winSent) {
+                    item = new Item(item.flags, item.expireAt, item.cas, item.value, true, true);
+                    win = true;
+                }
+                if (flags.containsKey('T')) {
+                    item = item.touch(expireAt(Integer.parseInt(flags.get('T'))));
+                }
+                items.put(key, item);
+            }
+        }
+        if (null == item) {
+            if (!flags.containsKey('q')) {
+                metaRespond(out, "EN", flags, null);
+            }
+            return;
+        }
+        StringBuilder header = new StringBuilder(flags.containsKey('v') ? "VA " + item.value.length : "HD");
+        if (flags.containsKey('f')) {
+            header.append(" f").append(Integer.toUnsignedString(item.flags));
+        }
+        if (flags.containsKey('c')) {
+            header.append(" c").append(item.cas);
+        }
+        if (flags.containsKey('t')) {
+            header.append(" t").append(item.expireAt == Long.MAX_VALUE ? -1 : Math.max(0, (item.expireAt - System.currentTimeMillis()) / 1000));
+        }
+        if (win) {
+            header.append(" W");
+        } else if (item.winSent) {
+            header.append(" Z");
+        }
+        if (item.stale) {
+            header.append(" X");
+        }
+        metaRespond(out, header.toString(), flags, flags.containsKey('v') ? item.value : null);
+    }
+
+    private void metaSet(String[] tokens, DataInputStream in, OutputStream out) throws IOException {
+        byte[] value = new byte[Integer.parseInt(tokens[2])];
+        in.readFully(value);
+        readLine(in);
+        Map<Character, String> flags = metaFlags(tokens, 3);
+        String key = metaKey(tokens[1], flags);
+        int clientFlags = flags.containsKey('F') ? Integer.parseUnsignedInt(flags.get('F')) : 0;
+        int ttl = flags.containsKey('T') ? Integer.parseInt(flags.get('T')) : 0;
+        String status = "HD";
+        synchronized (items) {
+            Item existing = live(key);
+            if (flags.containsKey('C') && (null == existing || existing.cas != Long.parseLong(flags.get('C')))) {
+                status = null == existing ? "NF" : "EX";
+            } else {
+                items.put(key, new Item(clientFlags, expireAt(ttl), casSequence.incrementAndGet(), value));
+            }
+        }
+        if (!"HD".equals(status) || !flags.containsKey('q')) {
+            metaRespond(out, status, flags, null);
+        }
+    }
+
+    private void metaDelete(String[] tokens, OutputStream out) throws IOException {
+        Map<Character, String> flags = metaFlags(tokens, 2);
+        String key = metaKey(tokens[1], flags);
+        String status = "HD";
+        synchronized (items) {
+            Item existing = live(key);
+            if (null == existing) {
+                status = "NF";
+            } else if (flags.containsKey('C') && existing.cas != Long.parseLong(flags.get('C'))) {
+                status = "EX";
+            } else if (flags.containsKey('I')) {
+                long expireAt = flags.containsKey('T') ? expireAt(Integer.parseInt(flags.get('T'))) : existing.expireAt;
+                items.put(key, new Item(existing.flags, expireAt, casSequence.incrementAndGet(), existing.value, true, false));
+            } else {
+                items.remove(key);
+            }
+        }
+        if (!"HD".equals(status) || !flags.containsKey('q')) {
+            metaRespond(out, status, flags, null);
+        }
+    }
+
+    private static Map<Character, String> metaFlags(String[] tokens, int start) {
+        Map<Character, String> flags = new HashMap<>();
+        for (int i = start; i < tokens.length; i++) {
+            if (!tokens[i].isEmpty()) {
+                flags.put(tokens[i].charAt(0), tokens[i].substring(1));
+            }
+        }
+        return flags;
+    }
+
+    private static String metaKey(String token, Map<Character, String> flags) {
+        if (flags.containsKey('b')) {
+            return new String(Base64.getDecoder().decode(token), StandardCharsets.UTF_8);
+        }
+        return token;
+    }
+
+    private static void metaRespond(OutputStream out, String header, Map<Character, String> flags, byte[] value) throws IOException {
+        StringBuilder line = new StringBuilder(header);
+        if (flags.containsKey('O')) {
+            line.append(" O").append(flags.get('O'));
+        }
+        line.append("\r\n");
+        out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+        if (null != value) {
+            out.write(value);
+            out.write('\r');
+            out.write('\n');
+        }
+    }
+
+    /**
+     * @return 不包含 \r\n 的一行，连接关闭时返回null
+     */
+    private static String readLine(DataInputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                return null;
+            }
+            if (b != '\r') {
+                line.append((char) b);
+            }
+        }
+        return line.toString();
+    }
+
+    /**
+     * @return false 表示关闭连接
+     */
+    private boolean handle(Request request, OutputStream out) throws IOException {
+        switch (request.opcode) {
+            case GET:
+            case GETQ:
+            case GETK:
+            case GETKQ:
+                get(request, out, null);
+                return true;
+            case GAT:
+            case GATQ:
+                get(request, out, request.extras.getInt(0));
+                return true;
+            case TOUCH:
+                touch(request, out);
+                return true;
+            case SET:
+            case SETQ:
+            case ADD:
+            case ADDQ:
+            case REPLACE:
+            case REPLACEQ:
+                store(request, out);
+                return true;
+            case APPEND:
+            case APPENDQ:
+            case PREPEND:
+            case PREPENDQ:
+                concat(request, out);
+                return true;
+            case DELETE:
+            case DELETEQ:
+                Item removed = items.remove(request.key);
+                if (null == removed || removed.isExpired()) {
+                    respond(out, request, STATUS_KEY_NOT_FOUND, null, null, null, 0);
+                } else if (request.opcode == DELETE) {
+                    respond(out, request, STATUS_OK, null, null, null, 0);
+                }
+                return true;
+            case INCREMENT:
+            case INCREMENTQ:
+            case DECREMENT:
+            case DECREMENTQ:
+                counter(request, out);
+                return true;
+            case FLUSH:
+            case FLUSHQ:
+                items.clear();
+                if (request.opcode == FLUSH) {
+                    respond(out, request, STATUS_OK, null, null, null, 0);
+                }
+                return true;
+            case NOOP:
+                respond(out, request, STATUS_OK, null, null, null, 0);
+                return true;
+            case VERSION:
+                respond(out, request, STATUS_OK, null, null, "1.6.0-stand-in".getBytes(StandardCharsets.US_ASCII), 0);
+                return true;
+            case STAT:
+                respond(out, request, STATUS_OK, null, null, null, 0);
+                return true;
+            case QUIT:
+                respond(out, request, STATUS_OK, null, null, null, 0);
+                return false;
+            case QUITQ:
+                return false;
+            default:
+                respond(out, request, STATUS_UNKNOWN_COMMAND, null, null, null, 0);
+                return true;
+        }
+    }
+
+    private void get(Request request, OutputStream out, Integer touch) throws IOException {
+        boolean quiet = request.opcode == GETQ || request.opcode == GETKQ || request.opcode == GATQ;
+        boolean withKey = request.opcode == GETK || request.opcode == GETKQ;
+        Item item = live(request.key);
+        if (null == item) {
+            if (!quiet) {
+                respond(out, request, STATUS_KEY_NOT_FOUND, null, withKey ? request.key : null, null, 0);
+            }
+            return;
+        }
+        if (null != touch) {
+            item = item.touch(expireAt(touch));
+            items.put(request.key, item);
+        }
+        ByteBuffer extras = ByteBuffer.allocate(4).putInt(0, item.flags);
+        respond(out, request, STATUS_OK, extras.array(), withKey ? request.key : null, item.value, item.cas);
+    }
+
+    private void touch(Request request, OutputStream out) throws IOException {
+        Item item = live(request.key);
+        if (null == item) {
+            respond(out, request, STATUS_KEY_NOT_FOUND, null, null, null, 0);
+            return;
+        }
+        items.put(request.key, item.touch(expireAt(request.extras.getInt(0))));
+        respond(out, request, STATUS_OK, null, null, null, 0);
+    }
+
+    private void store(Request request, OutputStream out) throws IOException {
+        int opcode = request.opcode;
+        boolean quiet = opcode == SETQ || opcode == ADDQ || opcode == REPLACEQ;
+        Item item = new Item(request.extras.getInt(0), expireAt(request.extras.getInt(4)), casSequence.incrementAndGet(), request.value);
+        short status = STATUS_OK;
+        synchronized (items) {
+            Item existing = live(request.key);
+            if ((opcode == ADD || opcode == ADDQ) && null != existing) {
+                status = STATUS_KEY_EXISTS;
+            } else if ((opcode == REPLACE || opcode == REPLACEQ) && null == existing) {
+                status = STATUS_KEY_NOT_FOUND;
+            } else if (request.cas != 0 && (null == existing || existing.cas != request.cas)) {
+                status = null == existing ? STATUS_KEY_NOT_FOUND : STATUS_KEY_EXISTS;
+            } else {
+                items.put(request.key, item);
+            }
+        }
+        if (status != STATUS_OK || !quiet) {
+            respond(out, request, status, null, null, null, status == STATUS_OK ? item.cas : 0);
+        }
+    }
+
+    private void concat(Request request, OutputStream out) throws IOException {
+        boolean append = request.opcode == APPEND || request.opcode == APPENDQ;
+        boolean quiet = request.opcode == APPENDQ || request.opcode == PREPENDQ;
+        short status = STATUS_OK;
+        synchronized (items) {
+            Item existing = live(request.key);
+            if (null == existing) {
+                status = STATUS_NOT_STORED;
+            } else {
+                byte[] value = new byte[existing.value.length + request.value.length];
+                byte[] first = append ? existing.value : request.value;
+                byte[] second = append ? request.value : existing.value;
+                System.arraycopy(first, 0, value, 0, first.length);
+                System.arraycopy(second, 0, value, first.length, second.length);
+                items.put(request.key, new Item(existing.flags, existing.expireAt, casSequence.incrementAndGet(), value));
+            }
+        }
+        if (status != STATUS_OK || !quiet) {
+            respond(out, request, status, null, null, null, 0);
+        }
+    }
+
+    private void counter(Request request, OutputStream out) throws IOException {
+        boolean increment = request.opcode == INCREMENT || request.opcode == INCREMENTQ;
+        boolean quiet = request.opcode == INCREMENTQ || request.opcode == DECREMENTQ;
+        long delta = request.extras.getLong(0);
+        long initial = request.extras.getLong(8);
+        int expiration = request.extras.getInt(16);
+        long result;
+        Item item;
+        synchronized (items) {
+            Item existing = live(request.key);
+            if (null == existing) {
+                if (expiration == -1) {
+                    respond(out, request, STATUS_KEY_NOT_FOUND, null, null, null, 0);
+                    return;
+                }
+                result = initial;
+                item = new Item(0, expireAt(expiration), casSequence.incrementAndGet(), ascii(result));
+            } else {
+                long current;
+                try {
+                    current = Long.parseUnsignedLong(new String(existing.value, StandardCharsets.US_ASCII).trim());
+                } catch (NumberFormatException e) {
+                    respond(out, request, STATUS_NON_NUMERIC, null, null, null, 0);
+                    return;
+                }
+                result = increment ? current + delta : Math.max(0, current - delta);
+                item = new Item(existing.flags, existing.expireAt, casSequence.incrementAndGet(), ascii(result));
+            }
+            items.put(request.key, item);
+        }
+        if (!quiet) {
+            respond(out, request, STATUS_OK, null, null, ByteBuffer.allocate(8).putLong(0, result).array(), item.cas);
+        }
+    }
+
+    private Item live(String key) {
+        Item item = items.get(key);
+        if (null != item && item.isExpired()) {
+            items.remove(key, item);
+            return null;
+        }
+        return item;
+    }
+
+    private static byte[] ascii(long value) {
+        return Long.toUnsignedString(value).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static long expireAt(int expiration) {
+        if (expiration == 0) {
+            return Long.MAX_VALUE;
+        }
+        long seconds = expiration & 0xFFFFFFFFL;
+        if (seconds > RELATIVE_EXPIRATION_LIMIT) {
+            return TimeUnit.SECONDS.toMillis(seconds);
+        }
+        return System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(seconds);
+    }
+
+    private static void respond(OutputStream out, Request request, short status, byte[] extras, String key, byte[] value, long cas) throws IOException {
+        byte[] keyBytes = null == key ? new byte[0] : key.getBytes(StandardCharsets.UTF_8);
+        int extrasLength = null == extras ? 0 : extras.length;
+        int valueLength = null == value ? 0 : value.length;
+        ByteBuffer header = ByteBuffer.allocate(24);
+        header.put(RESPONSE_MAGIC)
+                .put((byte) request.opcode)
+                .putShort((short) keyBytes.length)
+                .put((byte) extrasLength)
+                .put((byte) 0)
+                .putShort(status)
+                .putInt(extrasLength + keyBytes.length + valueLength)
+                .putInt(request.opaque)
+                .putLong(cas);
+        out.write(header.array());
+        if (null != extras) {
+            out.write(extras);
+        }
+        out.write(keyBytes);
+        if (null != value) {
+            out.write(value);
+        }
+    }
+
+    private static class Request {
+        private int opcode;
+        private int opaque;
+        private long cas;
+        private ByteBuffer extras;
+        private String key;
+        private byte[] value;
+    }
+
+    private static class Item {
+        private final int flags;
+        private final long expireAt;
+        private final long cas;
+        private final byte[] value;
+
+        /**
+         * 被 {@code md I} 标记为失效
+         */
+        private final boolean stale;
+
+        /**
+         * 加载权（W）已经发出
+         */
+        private final boolean winSent;
+
+        private Item(int flags, long expireAt, long cas, byte[] value) {
+            this(flags, expireAt, cas, value, false, false);
+        }
+
+        private Item(int flags, long expireAt, long cas, byte[] value, boolean stale, boolean winSent) {
+            this.flags = flags;
+            this.expireAt = expireAt;
+            this.cas = cas;
+            this.value = value;
+            this.stale = stale;
+            this.winSent = winSent;
+        }
+
+        private boolean isExpired() {
+            return expireAt != Long.MAX_VALUE && System.currentTimeMillis() >= expireAt;
+        }
+
+        private Item touch(long expireAt) {
+            return new Item(flags, expireAt, cas, value, stale, winSent);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package software.sitb.spring.cache.memcached;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 缓存后台任务默认使用的线程池，守护线程，有界队列，满了之后拒绝
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+final class CacheExecutors {
+
+    private static final int QUEUE_CAPACITY = 1024;
+
+    private CacheExecutors() {
+    }
+
+    static ExecutorService getDefault() {
+        return Holder.EXECUTOR;
+    }
+
+    /**
+     * @return 执行定时任务（如故障节点探测）的单线程调度器
+     */
+    static ScheduledExecutorService getScheduler() {
+        return SchedulerHolder.SCHEDULER;
+    }
+
+    /**
+     * @return 执行阻塞读取（如对冲读取）的线程池，不排队，没有空闲线程时创建新线程，空闲60秒后回收；
+     * 线程数达到上限后拒绝，调用方应在拒绝时直接在当前线程读取
+     */
+    static ExecutorService getBlocking() {
+        return BlockingHolder.EXECUTOR;
+    }
+
+    private static class SchedulerHolder {
+
+        private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "memcached-cache-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static class BlockingHolder {
+
+        private static final ExecutorService EXECUTOR = create();
+
+        private static ExecutorService create() {
+            AtomicInteger sequence = new AtomicInteger();
+            ThreadFactory threadFactory = runnable -> {
+                Thread thread = new Thread(runnable, "memcached-cache-blocking-" + sequence.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+            int threads = Math.max(64, Runtime.getRuntime().availableProcessors() * 8);
+            return new ThreadPoolExecutor(0, threads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), threadFactory,
+                    new ThreadPoolExecutor.AbortPolicy());
+        }
+    }
+
+    private static class Holder {
+
+        private static final ExecutorService EXECUTOR = create();
+
+        private static ExecutorService create() {
+            int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+            AtomicInteger sequence = new AtomicInteger();
+            ThreadFactory threadFactory = runnable -> {
+                Thread thread = new Thread(runnable, "memcached-cache-" + sequence.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(QUEUE_CAPACITY), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+}
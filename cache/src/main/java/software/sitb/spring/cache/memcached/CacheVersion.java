@@ -0,0 +1,134 @@
+package software.sitb.spring.cache.memcached;
+
+import net.rubyeye.xmemcached.MemcachedClient;
+import net.rubyeye.xmemcached.exception.MemcachedException;
+
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 保存在memcached计数器中的版本号，本地缓存一段时间后再重新读取。
+ * <p>
+ * 缓存的key中携带版本号，版本号自增后旧版本的key不再被访问，由memcached自行淘汰，
+ * 因此清空缓存只需要一次incr操作。
+ * <p>
+ * 版本号和读取时间作为一个整体通过CAS更新，本地的版本号只增不减：
+ * 较慢的 {@code incr 0} 读取返回时，不会覆盖并发自增后更大的版本号。
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+public class CacheVersion {
+
+    private final String key;
+
+    private final long refreshInterval;
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(new Snapshot(0, 0));
+
+    /**
+     * @param key             计数器的key
+     * @param refreshInterval 本地缓存时间，单位毫秒
+     */
+    public CacheVersion(String key, long refreshInterval) {
+        this.key = key;
+        this.refreshInterval = refreshInterval;
+    }
+
+    /**
+     * 获取当前版本号，本地缓存过期后从memcached重新读取
+     *
+     * @param client memcached 客户端
+     * @return 当前版本号
+     */
+    public long get(MemcachedClient client) throws InterruptedException, MemcachedException, TimeoutException {
+        return get(client, client.getOpTimeout());
+    }
+
+    /**
+     * 获取当前版本号，本地缓存过期后从memcached重新读取
+     *
+     * @param client  memcached 客户端
+     * @param timeout 超时时间，单位毫秒
+     * @return 当前版本号
+     */
+    public long get(MemcachedClient client, long timeout) throws InterruptedException, MemcachedException, TimeoutException {
+        long now = System.currentTimeMillis();
+        Snapshot current = snapshot.get();
+        if (now - current.readAt < refreshInterval) {
+            return current.version;
+        }
+        // incr 0 用于读取计数器，计数器不存在（或被memcached淘汰）时以当前时间作为初始值，避免旧版本号复活
+        return update(client.incr(key, 0, now, timeout), now);
+    }
+
+    /**
+     * 版本号加一，使旧版本号下的所有key失效
+     *
+     * @param client memcached 客户端
+     * @return 新的版本号
+     */
+    public long increment(MemcachedClient client) throws InterruptedException, MemcachedException, TimeoutException {
+        return increment(client, client.getOpTimeout());
+    }
+
+    /**
+     * 版本号加一，使旧版本号下的所有key失效
+     *
+     * @param client  memcached 客户端
+     * @param timeout 超时时间，单位毫秒
+     * @return 新的版本号
+     */
+    public long increment(MemcachedClient client, long timeout) throws InterruptedException, MemcachedException, TimeoutException {
+        long now = System.currentTimeMillis();
+        return update(client.incr(key, 1, now, timeout), now);
+    }
+
+    /**
+     * @return 本地缓存是否已过期，需要从memcached重新读取
+     */
+    public boolean isStale() {
+        return System.currentTimeMillis() - snapshot.get().readAt >= refreshInterval;
+    }
+
+    /**
+     * @return 最近一次从memcached读取的版本号，不访问memcached
+     */
+    public long getLocal() {
+        return snapshot.get().version;
+    }
+
+    /**
+     * 读取到的版本号小于本地版本号时（并发的自增或读取先返回）保留本地版本号
+     *
+     * @return 更新后的本地版本号
+     */
+    private long update(long value, long now) {
+        Snapshot current;
+        do {
+            current = snapshot.get();
+            if (value < current.version) {
+                return current.version;
+            }
+        } while (!snapshot.compareAndSet(current, new Snapshot(value, Math.max(now, current.readAt))));
+        return value;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * 版本号和读取时间
+     */
+    private static class Snapshot {
+
+        private final long version;
+
+        private final long readAt;
+
+        private Snapshot(long version, long readAt) {
+            this.version = version;
+            this.readAt = readAt;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package software.sitb.spring.cache.memcached;
+
+import net.rubyeye.xmemcached.transcoders.CachedData;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * 超过 chunkSize 的值拆分后的清单，写入原来的key，分块写入各自的key。
+ * <p>
+ * 每个分块以8字节的版本戳开头，版本戳每次写入随机生成，同时是分块key的一部分：
+ * 重新写入不会覆盖正在被读取的分块，读取时分块缺失（被淘汰）、版本戳或长度不一致都视为未命中。
+ * <p>
+ * {@link software.sitb.spring.cache.memcached.codec.CompactTranscoder} 把清单编码为20字节的二进制头，不经过 Serializer；
+ * 清单通过配置的编码实现写入，编码实现不认识清单时（如 SerializingTranscoder）按普通对象以Java序列化写入；
+ * 分块是原始字节，不经过编码实现。
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+public class ChunkedValue implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 分块开头的版本戳长度
+     */
+    static final int STAMP_SIZE = 8;
+
+    /**
+     * 分块的 flag，与编码实现的 flag 区分
+     */
+    static final int CHUNK_FLAG = 0x5C0000FF;
+
+    private final int flag;
+
+    private final int length;
+
+    private final int chunkSize;
+
+    private final long stamp;
+
+    /**
+     * @param flag      原值编码后的 flag
+     * @param length    原值编码后的字节数
+     * @param chunkSize 每个分块的最大字节数，不包括版本戳
+     * @param stamp     版本戳
+     */
+    public ChunkedValue(int flag, int length, int chunkSize, long stamp) {
+        this.flag = flag;
+        this.length = length;
+        this.chunkSize = chunkSize;
+        this.stamp = stamp;
+    }
+
+    /**
+     * @return 分块数
+     */
+    public int getChunkCount() {
+        return (int) (((long) length + chunkSize - 1) / chunkSize);
+    }
+
+    /**
+     * 截取第 index 个分块，开头写入版本戳
+     *
+     * @param data  原值编码后的字节
+     * @param index 分块序号，从0开始
+     * @return 写入memcached的分块
+     */
+    CachedData chunk(byte[] data, int index) {
+        int offset = index * chunkSize;
+        int size = Math.min(chunkSize, length - offset);
+        byte[] chunk = new byte[STAMP_SIZE + size];
+        for (int i = 0; i < STAMP_SIZE; i++) {
+            chunk[i] = (byte) (stamp >>> (56 - 8 * i));
+        }
+        System.arraycopy(data, offset, chunk, STAMP_SIZE, size);
+        return new CachedData(CHUNK_FLAG, chunk, chunk.length, -1);
+    }
+
+    /**
+     * 按顺序拼接分块，每个分块只复制一次到结果中
+     *
+     * @param chunkKeys 分块的key，按序号排列
+     * @param chunks    读取到的分块
+     * @return 原值编码后的数据，分块缺失或版本戳、长度不一致时返回null
+     */
+    CachedData join(String[] chunkKeys, Map<String, CachedData> chunks) {
+        byte[] data = new byte[length];
+        int offset = 0;
+        for (String chunkKey : chunkKeys) {
+            CachedData chunk = chunks.get(chunkKey);
+            if (null == chunk || chunk.getFlag() != CHUNK_FLAG) {
+                return null;
+            }
+            byte[] bytes = chunk.getData();
+            int size = bytes.length - STAMP_SIZE;
+            if (size < 0 || readStamp(bytes) != stamp || size > length - offset) {
+                return null;
+            }
+            System.arraycopy(bytes, STAMP_SIZE, data, offset, size);
+            offset += size;
+        }
+        return offset == length ? new CachedData(flag, data, length, -1) : null;
+    }
+
+    private static long readStamp(byte[] bytes) {
+        long value = 0;
+        for (int i = 0; i < STAMP_SIZE; i++) {
+            value = (value << 8) | (bytes[i] & 0xFF);
+        }
+        return value;
+    }
+
+    public int getFlag() {
+        return flag;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public long getStamp() {
+        return stamp;
+    }
+}
@@ -0,0 +1,193 @@
+package software.sitb.spring.cache.memcached;
+
+import software.sitb.spring.cache.memcached.metrics.Histogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 单个memcached节点的熔断器。
+ * <p>
+ * 按10秒一个窗口统计调用次数和失败（超时、异常）次数，失败率达到阈值后打开，打开期间直接跳过该节点。
+ * 打开一段时间后放行一次试探请求（半开），成功后关闭；后台探测成功也会关闭。
+ * <p>
+ * 超时时间根据上一个窗口的 p99 延迟自适应：{@code p99 * multiplier}，限制在最小超时和操作超时之间。
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+public class CircuitBreaker {
+
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+
+    private final int failureRateThreshold;
+
+    private final int minimumCalls;
+
+    private final long openNanos;
+
+    private final long maximumTimeout;
+
+    private final long minimumTimeout;
+
+    private final double timeoutMultiplier;
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private final AtomicInteger failures = new AtomicInteger();
+
+    private volatile long windowStart = System.nanoTime();
+
+    private volatile long openedAt;
+
+    /**
+     * 当前窗口成功调用的延迟，单位微秒
+     */
+    private volatile Histogram latency = new Histogram();
+
+    /**
+     * 根据上一个窗口计算的超时时间，单位毫秒
+     */
+    private volatile long timeout;
+
+    /**
+     * @param failureRateThreshold 失败率阈值，百分比
+     * @param minimumCalls         窗口内调用次数达到该值才计算失败率
+     * @param openDuration         打开后多久放行试探请求，单位毫秒
+     * @param maximumTimeout       操作超时，自适应超时的上限，单位毫秒
+     * @param minimumTimeout       自适应超时的下限，单位毫秒
+     * @param timeoutMultiplier    自适应超时为 p99 延迟的倍数
+     */
+    public CircuitBreaker(int failureRateThreshold, int minimumCalls, long openDuration,
+                          long maximumTimeout, long minimumTimeout, double timeoutMultiplier) {
+        this.failureRateThreshold = failureRateThreshold;
+        this.minimumCalls = minimumCalls;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openDuration);
+        this.maximumTimeout = maximumTimeout;
+        this.minimumTimeout = Math.min(minimumTimeout, maximumTimeout);
+        this.timeoutMultiplier = timeoutMultiplier;
+        this.timeout = maximumTimeout;
+    }
+
+    /**
+     * @return 是否允许访问该节点
+     */
+    public boolean allowRequest() {
+        State current = state.get();
+        if (current == State.CLOSED) {
+            return true;
+        }
+        return tryHalfOpen(current);
+    }
+
+    /**
+     * @return 节点当前是否正常，不占用半开状态的试探机会
+     */
+    public boolean isClosed() {
+        return state.get() == State.CLOSED;
+    }
+
+    /**
+     * 打开一段时间后放行一次试探请求；试探请求没有记录结果时，再过一段时间放行下一次
+     */
+    private synchronized boolean tryHalfOpen(State current) {
+        long now = System.nanoTime();
+        if (state.get() != current || now - openedAt < openNanos) {
+            return false;
+        }
+        openedAt = now;
+        state.set(State.HALF_OPEN);
+        return true;
+    }
+
+    /**
+     * @return 本次调用使用的超时时间，单位毫秒
+     */
+    public long getTimeout() {
+        return state.get() == State.HALF_OPEN ? maximumTimeout : timeout;
+    }
+
+    /**
+     * 记录一次成功的调用
+     *
+     * @param nanos 调用耗时，单位纳秒
+     */
+    public void onSuccess(long nanos) {
+        rotate();
+        calls.incrementAndGet();
+        latency.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+        if (state.get() == State.HALF_OPEN) {
+            close();
+        }
+    }
+
+    /**
+     * 记录一次超时或失败的调用
+     */
+    public void onFailure() {
+        rotate();
+        int total = calls.incrementAndGet();
+        int failed = failures.incrementAndGet();
+        State current = state.get();
+        if (current == State.HALF_OPEN) {
+            open(State.HALF_OPEN);
+        } else if (current == State.CLOSED && total >= minimumCalls && failed * 100L >= (long) failureRateThreshold * total) {
+            open(State.CLOSED);
+        }
+    }
+
+    /**
+     * 节点恢复，关闭熔断器并重新开始统计
+     */
+    public void close() {
+        State previous = state.getAndSet(State.CLOSED);
+        if (previous != State.CLOSED) {
+            resetWindow();
+        }
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    private synchronized void open(State expected) {
+        if (state.get() == expected) {
+            openedAt = System.nanoTime();
+            state.set(State.OPEN);
+        }
+    }
+
+    /**
+     * 进入新窗口时用上一个窗口的延迟计算超时时间
+     */
+    private void rotate() {
+        long now = System.nanoTime();
+        if (now - windowStart < WINDOW_NANOS) {
+            return;
+        }
+        synchronized (this) {
+            if (now - windowStart < WINDOW_NANOS) {
+                return;
+            }
+            Histogram previous = latency;
+            if (previous.getCount() >= minimumCalls) {
+                long adaptive = (long) Math.ceil(previous.getValueAtPercentile(99) * timeoutMultiplier / 1000);
+                timeout = Math.max(minimumTimeout, Math.min(maximumTimeout, adaptive));
+            }
+            resetWindow();
+        }
+    }
+
+    private synchronized void resetWindow() {
+        latency = new Histogram();
+        calls.set(0);
+        failures.set(0);
+        windowStart = System.nanoTime();
+    }
+}
@@ -0,0 +1,245 @@
+package software.sitb.spring.cache.memcached;
+
+import com.google.code.yanf4j.core.Session;
+import net.rubyeye.xmemcached.MemcachedClient;
+import net.rubyeye.xmemcached.XMemcachedClient;
+import net.rubyeye.xmemcached.exception.MemcachedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * 缓存使用的所有节点的熔断器，按key所在的节点选择。
+ * <p>
+ * 熔断器打开后在后台定期向该节点发送 stats 探测，成功后关闭。
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+public class CircuitBreakers {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CircuitBreakers.class);
+
+    /**
+     * 找不到节点（如所有连接都已断开）时使用的熔断器
+     */
+    private static final String UNKNOWN_NODE = "*";
+
+    private final ConcurrentMap<String, Node> nodes = new ConcurrentHashMap<>();
+
+    private final MemcachedConfig config;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final Supplier<MemcachedClient> client;
+
+    /**
+     * 操作超时，单位毫秒
+     */
+    private final long operationTimeout;
+
+    /**
+     * 访问节点的调用
+     *
+     * @param <T> 返回结果类型
+     */
+    @FunctionalInterface
+    public interface Call<T> {
+        T call(long timeout) throws InterruptedException, MemcachedException, TimeoutException;
+    }
+
+    public CircuitBreakers(MemcachedClient client, MemcachedConfig config) {
+        this(() -> client, config, CacheExecutors.getScheduler());
+    }
+
+    /**
+     * @param client    第一次访问节点时才获取客户端
+     * @param config    熔断配置
+     * @param scheduler 执行节点探测
+     */
+    public CircuitBreakers(Supplier<MemcachedClient> client, MemcachedConfig config, ScheduledExecutorService scheduler) {
+        this.client = client;
+        this.config = config;
+        this.scheduler = scheduler;
+        this.operationTimeout = null == config.getOperationTimeout() ? MemcachedClient.DEFAULT_OP_TIMEOUT : config.getOperationTimeout();
+    }
+
+    /**
+     * 通过key所在节点的熔断器执行调用
+     *
+     * @param key      memcached key
+     * @param call     访问memcached，参数为本次使用的超时时间
+     * @param fallback 熔断器打开时的返回值
+     * @param <T>      返回结果类型
+     * @return 调用结果，熔断器打开时返回 fallback
+     */
+    public <T> T execute(String key, Call<T> call, T fallback) throws InterruptedException, MemcachedException, TimeoutException {
+        Node node = nodeFor(key);
+        CircuitBreaker breaker = node.breaker;
+        if (!breaker.allowRequest()) {
+            return fallback;
+        }
+        long start = System.nanoTime();
+        try {
+            T result = call.call(breaker.getTimeout());
+            breaker.onSuccess(System.nanoTime() - start);
+            return result;
+        } catch (TimeoutException | MemcachedException e) {
+            onFailure(node);
+            throw e;
+        }
+    }
+
+    /**
+     * @param key memcached key
+     * @return key所在节点是否可以访问，不可以时调用方应跳过该key
+     */
+    public boolean allowRequest(String key) {
+        return nodeFor(key).breaker.allowRequest();
+    }
+
+    /**
+     * 不等待响应的操作使用，不占用半开状态的试探机会
+     *
+     * @param key memcached key
+     * @return key所在节点的熔断器是否关闭
+     */
+    public boolean isAvailable(String key) {
+        return nodeFor(key).breaker.isClosed();
+    }
+
+    /**
+     * @param key memcached key
+     * @return key所在节点当前的超时时间，单位毫秒
+     */
+    public long getTimeout(String key) {
+        return nodeFor(key).breaker.getTimeout();
+    }
+
+    /**
+     * 记录一批key的调用结果，用于批量操作
+     *
+     * @param keys    memcached key
+     * @param nanos   调用耗时，单位纳秒
+     * @param success 是否成功
+     */
+    public void record(Iterable<String> keys, long nanos, boolean success) {
+        Map<String, Node> involved = new LinkedHashMap<>();
+        for (String key : keys) {
+            Node node = nodeFor(key);
+            involved.putIfAbsent(node.name, node);
+        }
+        for (Node node : involved.values()) {
+            if (success) {
+                node.breaker.onSuccess(nanos);
+            } else {
+                onFailure(node);
+            }
+        }
+    }
+
+    /**
+     * @return 节点和熔断器状态
+     */
+    public Map<String, String> getStates() {
+        Map<String, String> states = new LinkedHashMap<>();
+        for (Node node : nodes.values()) {
+            states.put(node.name, node.breaker.getState().name());
+        }
+        return states;
+    }
+
+    private void onFailure(Node node) {
+        node.breaker.onFailure();
+        if (node.breaker.getState() == CircuitBreaker.State.OPEN) {
+            scheduleProbe(node);
+        }
+    }
+
+    private Node nodeFor(String key) {
+        InetSocketAddress address = null;
+        MemcachedClient memcachedClient;
+        try {
+            memcachedClient = client.get();
+        } catch (IllegalStateException e) {
+            // 客户端创建失败时所有key都使用未知节点的熔断器
+            memcachedClient = null;
+        }
+        if (memcachedClient instanceof XMemcachedClient) {
+            Session session = ((XMemcachedClient) memcachedClient).getSessionLocator().getSessionByKey(key);
+            if (null != session) {
+                address = session.getRemoteSocketAddress();
+            }
+        }
+        String name = null == address ? UNKNOWN_NODE : address.getHostString() + ":" + address.getPort();
+        Node node = nodes.get(name);
+        if (null == node) {
+            InetSocketAddress nodeAddress = address;
+            node = nodes.computeIfAbsent(name, n -> new Node(n, nodeAddress, newBreaker()));
+        }
+        return node;
+    }
+
+    private CircuitBreaker newBreaker() {
+        return new CircuitBreaker(config.getBreakerFailureRate(), config.getBreakerMinimumCalls(), config.getBreakerOpenDuration(),
+                operationTimeout, config.getMinimumTimeout(), config.getAdaptiveTimeoutMultiplier());
+    }
+
+    /**
+     * 定期探测节点直到恢复，同一个节点只有一个探测任务
+     */
+    private void scheduleProbe(Node node) {
+        if (null == node.address || !node.probing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            scheduler.schedule(() -> probe(node), config.getBreakerProbeInterval(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            node.probing.set(false);
+        }
+    }
+
+    private void probe(Node node) {
+        MemcachedClient memcachedClient = client.get();
+        if (node.breaker.getState() == CircuitBreaker.State.CLOSED || memcachedClient.isShutdown()) {
+            node.probing.set(false);
+            return;
+        }
+        try {
+            memcachedClient.stats(node.address, operationTimeout);
+            LOGGER.info("memcached节点[{}]已恢复", node.name);
+            node.breaker.close();
+            node.probing.set(false);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            node.probing.set(false);
+        } catch (TimeoutException | MemcachedException e) {
+            LOGGER.debug("memcached节点[{}]仍不可用: {}", node.name, e.getMessage());
+            node.probing.set(false);
+            scheduleProbe(node);
+        }
+    }
+
+    private static class Node {
+        private final String name;
+        private final InetSocketAddress address;
+        private final CircuitBreaker breaker;
+        private final AtomicBoolean probing = new AtomicBoolean();
+
+        private Node(String name, InetSocketAddress address, CircuitBreaker breaker) {
+            this.name = name;
+            this.address = address;
+            this.breaker = breaker;
+        }
+    }
+}
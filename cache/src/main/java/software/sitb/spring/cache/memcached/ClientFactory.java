@@ -0,0 +1,54 @@
+package software.sitb.spring.cache.memcached;
+
+import net.rubyeye.xmemcached.MemcachedClient;
+
+import java.util.function.Supplier;
+
+/**
+ * 延迟创建客户端，创建失败后在重试间隔内直接抛出上次的失败，不在每次访问时同步重试创建
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+final class ClientFactory implements Supplier<MemcachedClient> {
+
+    private final Supplier<MemcachedClient> delegate;
+
+    /**
+     * 创建失败后的重试间隔，单位毫秒
+     */
+    private final long retryInterval;
+
+    private volatile IllegalStateException failure;
+
+    private volatile long retryAt;
+
+    /**
+     * @param delegate      创建客户端，失败时抛出 IllegalStateException
+     * @param retryInterval 创建失败后的重试间隔，单位毫秒
+     */
+    ClientFactory(Supplier<MemcachedClient> delegate, long retryInterval) {
+        this.delegate = delegate;
+        this.retryInterval = retryInterval;
+    }
+
+    /**
+     * @return 新创建的客户端
+     * @throws IllegalStateException 创建失败，或重试间隔内上次创建失败
+     */
+    @Override
+    public MemcachedClient get() {
+        IllegalStateException last = failure;
+        if (null != last && System.currentTimeMillis() < retryAt) {
+            throw last;
+        }
+        try {
+            MemcachedClient client = delegate.get();
+            failure = null;
+            return client;
+        } catch (IllegalStateException e) {
+            retryAt = System.currentTimeMillis() + retryInterval;
+            failure = e;
+            throw e;
+        }
+    }
+}
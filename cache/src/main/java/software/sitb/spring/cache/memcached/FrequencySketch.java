@@ -0,0 +1,104 @@
+package software.sitb.spring.cache.memcached;
+
+/**
+ * 4位计数器的Count-Min Sketch，用于估算key的访问频率（TinyLFU）。
+ * <p>
+ * 每个long保存16个计数器，4行共享同一张表；累计访问次数达到采样数后所有计数器减半，
+ * 使历史热点逐渐衰减。非线程安全，由调用方加锁。
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+class FrequencySketch {
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+
+    private final int tableMask;
+
+    private final int sampleSize;
+
+    private int size;
+
+    /**
+     * @param maximumSize 预计需要统计的key数量
+     */
+    FrequencySketch(int maximumSize) {
+        int capacity = Integer.highestOneBit(Math.max(maximumSize, 16) - 1) << 1;
+        this.table = new long[capacity];
+        this.tableMask = capacity - 1;
+        this.sampleSize = 10 * Math.max(maximumSize, 16);
+    }
+
+    /**
+     * 估算访问频率
+     *
+     * @param hash key的hash值
+     * @return 0 ~ 15
+     */
+    int frequency(int hash) {
+        int frequency = 15;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long h = rehash(hash, i);
+            int shift = counterShift(h);
+            frequency = Math.min(frequency, (int) ((table[index(h)] >>> shift) & 0xfL));
+        }
+        return frequency;
+    }
+
+    /**
+     * 记录一次访问
+     *
+     * @param hash key的hash值
+     */
+    void increment(int hash) {
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long h = rehash(hash, i);
+            int index = index(h);
+            int shift = counterShift(h);
+            if (((table[index] >>> shift) & 0xfL) != 0xfL) {
+                table[index] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++size >= sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size >>>= 1;
+    }
+
+    private int index(long h) {
+        return (int) h & tableMask;
+    }
+
+    private static int counterShift(long h) {
+        return (int) ((h >>> 40) & 15) << 2;
+    }
+
+    private static long rehash(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * 打散字符串的hash值
+     *
+     * @param key key
+     * @return hash值
+     */
+    static int spread(Object key) {
+        int h = key.hashCode() * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,176 @@
+package software.sitb.spring.cache.memcached;
+
+import net.rubyeye.xmemcached.exception.MemcachedException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 把并发的单key读取合并为批量读取。
+ * <p>
+ * 调度线程取到第一个请求后，最多再等待 window 或凑满 batchSize 个请求，然后把这一批交给线程池用一次 multi-get 读取
+ * （memcached客户端按节点分组，每个节点一次往返），调度线程继续收集下一批。同一批中相同的key只读取一次。
+ * <p>
+ * 执行批量读取的线程池不能是调用方阻塞等待结果的线程池（如 {@code getAsync} 使用的线程池），
+ * 否则线程都在等待批量读取时，批量读取本身排不上队，直到超时。
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+public class GetBatcher {
+
+    /**
+     * 批量读取
+     */
+    @FunctionalInterface
+    public interface Fetcher {
+        Map<String, ?> fetch(Collection<String> keys) throws InterruptedException, MemcachedException, TimeoutException;
+    }
+
+    private final String name;
+
+    private final Fetcher fetcher;
+
+    private final long windowNanos;
+
+    private final int batchSize;
+
+    private final Executor executor;
+
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+
+    private volatile Thread dispatcher;
+
+    private volatile boolean closed;
+
+    /**
+     * @param name         缓存名字，用于线程名
+     * @param fetcher      批量读取
+     * @param windowMicros 第一个请求到达后最多等待的时间，单位微秒
+     * @param batchSize    每批最多的请求数
+     * @param executor     执行批量读取，调用方不能在该线程池中等待批量读取的结果
+     */
+    public GetBatcher(String name, Fetcher fetcher, long windowMicros, int batchSize, Executor executor) {
+        this.name = name;
+        this.fetcher = fetcher;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.batchSize = batchSize;
+        this.executor = executor;
+    }
+
+    /**
+     * @param key memcached key
+     * @return 读取结果，未命中时为null
+     */
+    public CompletableFuture<Object> get(String key) {
+        Request request = new Request(key);
+        if (closed) {
+            request.future.completeExceptionally(new MemcachedException("批量读取已关闭: " + name));
+            return request.future;
+        }
+        if (null == dispatcher) {
+            start();
+        }
+        queue.add(request);
+        return request.future;
+    }
+
+    /**
+     * 停止调度线程，未发出的请求以异常结束
+     */
+    public void close() {
+        closed = true;
+        Thread current = dispatcher;
+        if (null != current) {
+            current.interrupt();
+        }
+        Request request;
+        while (null != (request = queue.poll())) {
+            request.future.completeExceptionally(new MemcachedException("批量读取已关闭: " + name));
+        }
+    }
+
+    private synchronized void start() {
+        if (null != dispatcher) {
+            return;
+        }
+        Thread thread = new Thread(this::dispatch, "memcached-get-batcher-" + name);
+        thread.setDaemon(true);
+        thread.start();
+        dispatcher = thread;
+    }
+
+    private void dispatch() {
+        while (!closed) {
+            List<Request> batch = new ArrayList<>(batchSize);
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < batchSize) {
+                    if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    Request next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (null == next) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                fail(batch, new MemcachedException("批量读取已关闭: " + name));
+                return;
+            }
+            try {
+                executor.execute(() -> fetch(batch));
+            } catch (RejectedExecutionException e) {
+                fetch(batch);
+            }
+        }
+    }
+
+    private void fetch(List<Request> batch) {
+        Set<String> keys = new LinkedHashSet<>(batch.size());
+        for (Request request : batch) {
+            keys.add(request.key);
+        }
+        try {
+            Map<String, ?> values = fetcher.fetch(keys);
+            for (Request request : batch) {
+                request.future.complete(values.get(request.key));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(batch, e);
+        } catch (MemcachedException | TimeoutException | RuntimeException e) {
+            fail(batch, e);
+        }
+    }
+
+    private static void fail(List<Request> batch, Throwable cause) {
+        for (Request request : batch) {
+            request.future.completeExceptionally(cause);
+        }
+    }
+
+    private static class Request {
+
+        private final String key;
+
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+
+        private Request(String key) {
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package software.sitb.spring.cache.memcached;
+
+import net.rubyeye.xmemcached.exception.MemcachedException;
+import software.sitb.spring.cache.memcached.metrics.Histogram;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 对冲读取：先读主集群，超过对冲延迟还没有响应时再读副本集群，先返回的结果生效。
+ * 副本未命中不算结果（副本可能还没有复制到），继续等待主集群，主集群失败时才返回副本的未命中。
+ * <p>
+ * 对冲延迟按10秒一个窗口统计主集群读取延迟，取上一个窗口的百分位数（如p95），不低于最小延迟；
+ * 第一个窗口的样本数不足时不对冲。
+ * 对冲次数受预算限制：每次读取积累 budget% 个令牌，每次对冲消耗一个，最多积累 {@link #MAX_TOKENS} 个，
+ * 副本集群额外承受的读取不超过主集群的 budget%。
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+public class HedgedReader {
+
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    /**
+     * 窗口内样本数达到该值才计算对冲延迟
+     */
+    private static final int MINIMUM_SAMPLES = 100;
+
+    /**
+     * 令牌以千分之一为单位保存
+     */
+    private static final long TOKEN = 1000;
+
+    private static final long MAX_TOKENS = 10;
+
+    private final double percentile;
+
+    private final long minimumDelay;
+
+    private final long tokensPerRead;
+
+    private final Executor executor;
+
+    private final AtomicLong tokens = new AtomicLong(TOKEN);
+
+    private final LongAdder hedgeCount = new LongAdder();
+
+    private final LongAdder hedgeWinCount = new LongAdder();
+
+    private final LongAdder budgetExhaustedCount = new LongAdder();
+
+    private volatile long windowStart = System.nanoTime();
+
+    /**
+     * 当前窗口主集群读取的延迟，单位微秒
+     */
+    private volatile Histogram latency = new Histogram();
+
+    /**
+     * 根据上一个窗口计算的对冲延迟，单位微秒，0表示不对冲
+     */
+    private volatile long delay;
+
+    /**
+     * @param percentile   对冲延迟取主集群读取延迟的百分位数，0 ~ 100
+     * @param minimumDelay 对冲延迟的下限，单位微秒
+     * @param budget       对冲读取占总读取的最大比例，百分比
+     * @param executor     执行读取，读取会阻塞线程，不能排队；拒绝时在调用线程读取主集群，不对冲
+     */
+    public HedgedReader(double percentile, long minimumDelay, int budget, Executor executor) {
+        this.percentile = percentile;
+        this.minimumDelay = minimumDelay;
+        this.tokensPerRead = TOKEN * budget / 100;
+        this.executor = executor;
+    }
+
+    /**
+     * 读取，超过对冲延迟后在预算允许时读取副本
+     *
+     * @param primary 读取主集群
+     * @param replica 读取副本集群
+     * @param timeout 最长等待时间，单位毫秒
+     * @return 先返回的结果
+     */
+    public Object get(Callable<Object> primary, Callable<Object> replica, long timeout) throws InterruptedException, MemcachedException, TimeoutException {
+        long start = System.nanoTime();
+        deposit();
+        long hedgeDelay = delay;
+        if (hedgeDelay <= 0) {
+            // 还没有对冲延迟时直接在调用线程读取
+            Object value = call(primary);
+            record(System.nanoTime() - start);
+            return value;
+        }
+        Race race = new Race();
+        try {
+            executor.execute(() -> complete(race, () -> {
+                Object value = primary.call();
+                record(System.nanoTime() - start);
+                return value;
+            }, false));
+        } catch (RejectedExecutionException e) {
+            // 线程池已满时不对冲，直接在调用线程读取主集群
+            Object value = call(primary);
+            record(System.nanoTime() - start);
+            return value;
+        }
+        try {
+            return race.result.get(hedgeDelay, TimeUnit.MICROSECONDS);
+        } catch (TimeoutException e) {
+            hedge(race, replica);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeout) - (System.nanoTime() - start);
+        try {
+            return race.result.get(Math.max(remaining, 0), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } catch (TimeoutException e) {
+            throw new TimeoutException("对冲读取超时: " + timeout + "ms");
+        }
+    }
+
+    private void hedge(Race race, Callable<Object> replica) {
+        if (!withdraw()) {
+            budgetExhaustedCount.increment();
+            return;
+        }
+        hedgeCount.increment();
+        race.pending.incrementAndGet();
+        try {
+            executor.execute(() -> complete(race, replica, true));
+        } catch (RejectedExecutionException e) {
+            if (race.pending.decrementAndGet() == 0) {
+                race.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void complete(Race race, Callable<Object> read, boolean hedged) {
+        try {
+            Object value = read.call();
+            if (hedged && null == value) {
+                // 副本未命中时等待主集群，主集群已经失败时才以未命中结束
+                if (race.pending.decrementAndGet() == 0) {
+                    race.result.complete(null);
+                }
+            } else if (race.result.complete(value) && hedged) {
+                hedgeWinCount.increment();
+            }
+        } catch (Throwable e) {
+            // 两个读取都失败时才失败
+            if (race.pending.decrementAndGet() == 0) {
+                race.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static Object call(Callable<Object> read) throws InterruptedException, MemcachedException, TimeoutException {
+        try {
+            return read.call();
+        } catch (InterruptedException | MemcachedException | TimeoutException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new MemcachedException(e);
+        }
+    }
+
+    private static MemcachedException unwrap(ExecutionException e) throws InterruptedException, TimeoutException {
+        Throwable cause = e.getCause();
+        if (cause instanceof MemcachedException) {
+            return (MemcachedException) cause;
+        }
+        if (cause instanceof TimeoutException) {
+            throw (TimeoutException) cause;
+        }
+        if (cause instanceof InterruptedException) {
+            throw (InterruptedException) cause;
+        }
+        return new MemcachedException(cause);
+    }
+
+    private void deposit() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current >= MAX_TOKENS * TOKEN) {
+                return;
+            }
+        } while (!tokens.compareAndSet(current, Math.min(MAX_TOKENS * TOKEN, current + tokensPerRead)));
+    }
+
+    private boolean withdraw() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < TOKEN) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - TOKEN));
+        return true;
+    }
+
+    /**
+     * 记录主集群读取的延迟，进入新窗口时用上一个窗口的延迟计算对冲延迟
+     */
+    private void record(long nanos) {
+        long now = System.nanoTime();
+        if (now - windowStart >= WINDOW_NANOS) {
+            synchronized (this) {
+                if (now - windowStart >= WINDOW_NANOS) {
+                    Histogram previous = latency;
+                    if (previous.getCount() >= MINIMUM_SAMPLES) {
+                        delay = Math.max(minimumDelay, previous.getValueAtPercentile(percentile));
+                    }
+                    latency = new Histogram();
+                    windowStart = now;
+                }
+            }
+        }
+        latency.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    /**
+     * @return 当前的对冲延迟，单位微秒，0表示样本不足还没有开始对冲
+     */
+    public long getDelay() {
+        return delay;
+    }
+
+    /**
+     * @return 发出的对冲读取次数
+     */
+    public long getHedgeCount() {
+        return hedgeCount.sum();
+    }
+
+    /**
+     * @return 副本先于主集群返回的次数
+     */
+    public long getHedgeWinCount() {
+        return hedgeWinCount.sum();
+    }
+
+    /**
+     * @return 超过对冲延迟但预算不足没有对冲的次数
+     */
+    public long getBudgetExhaustedCount() {
+        return budgetExhaustedCount.sum();
+    }
+
+    /**
+     * 一次读取中主集群和副本集群的竞争
+     */
+    private static class Race {
+
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+        /**
+         * 还没有结束的读取数
+         */
+        private final AtomicInteger pending = new AtomicInteger(1);
+    }
+}
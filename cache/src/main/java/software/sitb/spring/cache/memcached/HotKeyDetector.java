@@ -0,0 +1,142 @@
+package software.sitb.spring.cache.memcached;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 热点key检测。
+ * <p>
+ * 每秒一个窗口，用Count-Min Sketch统计窗口内每个key的访问次数，
+ * 估算次数达到阈值的key记为热点，连续两个窗口没有达到阈值后移除。
+ * Count-Min只会高估，不会漏掉真正的热点。
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+public class HotKeyDetector {
+
+    private static final long WINDOW_MILLIS = 1000;
+
+    private static final int DEPTH = 4;
+
+    private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+    private final AtomicIntegerArray counters;
+
+    private final int widthMask;
+
+    private final int threshold;
+
+    private final int maximumSize;
+
+    private final AtomicLong window = new AtomicLong();
+
+    private final ConcurrentMap<String, HotKey> hotKeys = new ConcurrentHashMap<>();
+
+    /**
+     * @param threshold   每秒访问次数达到该值的key为热点
+     * @param maximumSize 最多记录的热点key数量
+     */
+    public HotKeyDetector(int threshold, int maximumSize) {
+        // 宽度远大于热点数量，降低普通key碰撞后被误判的概率
+        int width = Integer.highestOneBit(Math.max(1024, maximumSize * 64) - 1) << 1;
+        this.counters = new AtomicIntegerArray(DEPTH * width);
+        this.widthMask = width - 1;
+        this.threshold = threshold;
+        this.maximumSize = maximumSize;
+        this.window.set(currentWindow());
+    }
+
+    /**
+     * 记录一次访问
+     *
+     * @param key memcached key
+     * @return 是否为热点key
+     */
+    public boolean record(String key) {
+        long current = currentWindow();
+        rotate(current);
+        int hash = key.hashCode();
+        int estimate = Integer.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            estimate = Math.min(estimate, counters.incrementAndGet(index(hash, i)));
+        }
+        if (estimate < threshold) {
+            return isHot(key, current);
+        }
+        HotKey hotKey = hotKeys.get(key);
+        if (null == hotKey) {
+            if (hotKeys.size() >= maximumSize) {
+                return false;
+            }
+            hotKey = hotKeys.computeIfAbsent(key, k -> new HotKey());
+        }
+        hotKey.window = current;
+        hotKey.count = estimate;
+        return true;
+    }
+
+    /**
+     * @param key memcached key
+     * @return 是否为热点key
+     */
+    public boolean isHot(String key) {
+        return isHot(key, currentWindow());
+    }
+
+    /**
+     * @return 当前的热点key和最近一个窗口内的估算访问次数，按次数降序
+     */
+    public Map<String, Long> getHotKeys() {
+        long current = currentWindow();
+        Map<String, Long> result = new LinkedHashMap<>();
+        hotKeys.entrySet().stream()
+                .filter(entry -> current - entry.getValue().window <= 1)
+                .sorted((a, b) -> Integer.compare(b.getValue().count, a.getValue().count))
+                .forEach(entry -> result.put(entry.getKey(), (long) entry.getValue().count));
+        return result;
+    }
+
+    private boolean isHot(String key, long current) {
+        HotKey hotKey = hotKeys.get(key);
+        return null != hotKey && current - hotKey.window <= 1;
+    }
+
+    /**
+     * 进入新窗口时清零计数，移除两个窗口内没有达到阈值的热点
+     */
+    private void rotate(long current) {
+        long previous = window.get();
+        if (previous == current || !window.compareAndSet(previous, current)) {
+            return;
+        }
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+        Iterator<HotKey> iterator = hotKeys.values().iterator();
+        while (iterator.hasNext()) {
+            if (current - iterator.next().window > 1) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private int index(int hash, int row) {
+        int h = (hash ^ SEEDS[row]) * SEEDS[(row + 1) % DEPTH];
+        h ^= h >>> 16;
+        return row * (widthMask + 1) + (h & widthMask);
+    }
+
+    private static long currentWindow() {
+        return System.currentTimeMillis() / WINDOW_MILLIS;
+    }
+
+    private static class HotKey {
+        private volatile long window;
+        private volatile int count;
+    }
+}
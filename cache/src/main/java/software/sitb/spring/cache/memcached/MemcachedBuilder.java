@@ -4,13 +4,20 @@ import net.rubyeye.xmemcached.MemcachedClient;
 import net.rubyeye.xmemcached.MemcachedClientBuilder;
 import net.rubyeye.xmemcached.XMemcachedClientBuilder;
 import net.rubyeye.xmemcached.command.BinaryCommandFactory;
-import net.rubyeye.xmemcached.utils.AddrUtil;
+import net.rubyeye.xmemcached.impl.ArrayMemcachedSessionLocator;
+import net.rubyeye.xmemcached.transcoders.Transcoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import software.sitb.spring.cache.memcached.codec.CompactTranscoder;
+import software.sitb.spring.cache.memcached.locator.KetamaSessionLocator;
+import software.sitb.spring.cache.memcached.locator.ServerAddress;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author 田尘殇Sean sean.snow@live.com
@@ -19,12 +26,25 @@ public class MemcachedBuilder {
 
     private static final Logger log = LoggerFactory.getLogger(MemcachedBuilder.class);
 
-    private MemcachedClientBuilder builder;
-
     private MemcachedConfig config;
 
     private List<InetSocketAddress> addresses;
 
+    private int[] weights;
+
+    /**
+     * 副本集群的地址，未配置时为null
+     */
+    private List<InetSocketAddress> replicaAddresses;
+
+    private int[] replicaWeights;
+
+    private Transcoder<Object> transcoder;
+
+    private volatile MemcachedClient sharedClient;
+
+    private volatile MemcachedClient sharedReplicaClient;
+
     public MemcachedBuilder(MemcachedConfig config) {
         this.config = config;
         init();
@@ -35,34 +55,167 @@ public class MemcachedBuilder {
      */
     private void init() {
 
-        if (builder != null)
+        if (addresses != null)
             return;
 
-        addresses = AddrUtil.getAddresses(config.getConnectString());
-        int[] weights = new int[addresses.size()];
+        int defaultWeight = null == config.getWeights() ? 1 : config.getWeights();
+        List<ServerAddress> servers = ServerAddress.parse(config.getConnectString(), defaultWeight);
+        addresses = new ArrayList<>(servers.size());
+        weights = new int[servers.size()];
         for (int i = 0; i < weights.length; i++) {
-            weights[i] = config.getWeights();
+            addresses.add(servers.get(i).toSocketAddress());
+            weights[i] = servers.get(i).getWeight();
+        }
+        if (null != config.getReplicaConnectString() && !config.getReplicaConnectString().trim().isEmpty()) {
+            List<ServerAddress> replicas = ServerAddress.parse(config.getReplicaConnectString(), defaultWeight);
+            replicaAddresses = new ArrayList<>(replicas.size());
+            replicaWeights = new int[replicas.size()];
+            for (int i = 0; i < replicaWeights.length; i++) {
+                replicaAddresses.add(replicas.get(i).toSocketAddress());
+                replicaWeights[i] = replicas.get(i).getWeight();
+            }
         }
-        builder = new XMemcachedClientBuilder(addresses, weights);
+        transcoder = createTranscoder();
+    }
+
+    /**
+     * 每个客户端使用独立的Builder，多个客户端可以并行创建
+     */
+    private MemcachedClientBuilder newClientBuilder(List<InetSocketAddress> addresses, int[] weights) {
+        MemcachedClientBuilder builder = new XMemcachedClientBuilder(addresses, weights);
         builder.setConnectionPoolSize(config.getConnectionPoolSize());
         builder.setConnectTimeout(config.getConnectTimeout());
         builder.setFailureMode(config.getFailureMode());
         builder.setCommandFactory(new BinaryCommandFactory());
+        builder.setTranscoder(transcoder);
+        if (null != config.getOperationTimeout()) {
+            builder.setOpTimeout(config.getOperationTimeout());
+        }
+        // 节点选择器保存了客户端的连接，每个客户端使用独立的实例
+        if (Boolean.TRUE.equals(config.getConsistentHash())) {
+            Map<String, Integer> labels = new HashMap<>();
+            for (int i = 0; i < addresses.size(); i++) {
+                labels.put(addresses.get(i).getHostString() + ":" + addresses.get(i).getPort(), weights[i]);
+            }
+            builder.setSessionLocator(new KetamaSessionLocator(labels));
+        } else {
+            builder.setSessionLocator(new ArrayMemcachedSessionLocator());
+        }
+        return builder;
+    }
+
+    /**
+     * 获取配置的编解码实现，未配置时使用 CompactTranscoder
+     *
+     * @return Transcoder
+     */
+    private Transcoder<Object> createTranscoder() {
+        Transcoder<Object> transcoder = config.getTranscoder();
+        if (null == transcoder) {
+            transcoder = new CompactTranscoder();
+        }
+        if (null != config.getCompressionThreshold()) {
+            transcoder.setCompressionThreshold(config.getCompressionThreshold());
+        }
+        return transcoder;
     }
 
 
     /**
      * 创建一个Memcached 客户端
      *
-     * @return MemcachedClient 如果发生异常返回Null
+     * @return MemcachedClient
+     * @throws IllegalStateException 创建失败
      */
     public MemcachedClient builder() {
         try {
-            return builder.build();
+            return newClientBuilder(addresses, weights).build();
         } catch (IOException e) {
-            log.error("创建MemcachedClient失败", e);
+            throw new IllegalStateException("创建MemcachedClient失败: " + config.getConnectString(), e);
         }
-        return null;
+    }
+
+    /**
+     * 创建一个副本集群的客户端，连接配置与主集群相同
+     *
+     * @return MemcachedClient，未配置副本集群时返回null
+     * @throws IllegalStateException 创建失败
+     */
+    public MemcachedClient buildReplica() {
+        if (!hasReplica()) {
+            return null;
+        }
+        try {
+            return newClientBuilder(replicaAddresses, replicaWeights).build();
+        } catch (IOException e) {
+            throw new IllegalStateException("创建副本MemcachedClient失败: " + config.getReplicaConnectString(), e);
+        }
+    }
+
+    /**
+     * 获取所有缓存共用的客户端，第一次调用时创建
+     *
+     * @return MemcachedClient
+     * @throws IllegalStateException 创建失败
+     */
+    public MemcachedClient getSharedClient() {
+        if (null == sharedClient) {
+            synchronized (this) {
+                if (null == sharedClient) {
+                    sharedClient = builder();
+                }
+            }
+        }
+        return sharedClient;
+    }
+
+    /**
+     * 获取缓存使用的客户端，共享模式下返回共用的客户端，否则新建一个
+     *
+     * @param name 缓存名字
+     * @return MemcachedClient
+     * @throws IllegalStateException 创建失败
+     */
+    public MemcachedClient getClient(String name) {
+        if (Boolean.TRUE.equals(config.getSharedClient())) {
+            return getSharedClient();
+        }
+        MemcachedClient client = builder();
+        client.setName(name);
+        return client;
+    }
+
+    /**
+     * 获取缓存使用的副本集群客户端，共享模式下返回共用的客户端，否则新建一个
+     *
+     * @param name 缓存名字
+     * @return MemcachedClient，未配置副本集群时返回null
+     * @throws IllegalStateException 创建失败
+     */
+    public MemcachedClient getReplicaClient(String name) {
+        if (!hasReplica()) {
+            return null;
+        }
+        if (Boolean.TRUE.equals(config.getSharedClient())) {
+            if (null == sharedReplicaClient) {
+                synchronized (this) {
+                    if (null == sharedReplicaClient) {
+                        sharedReplicaClient = buildReplica();
+                    }
+                }
+            }
+            return sharedReplicaClient;
+        }
+        MemcachedClient client = buildReplica();
+        client.setName(name + "-replica");
+        return client;
+    }
+
+    /**
+     * @return 是否配置了副本集群
+     */
+    public boolean hasReplica() {
+        return null != replicaAddresses && !replicaAddresses.isEmpty();
     }
 
     /**
@@ -91,4 +244,11 @@ public class MemcachedBuilder {
     public List<InetSocketAddress> getAddresses() {
         return addresses;
     }
+
+    /**
+     * @return 所有客户端使用的编解码实现，不需要先创建客户端
+     */
+    public Transcoder<Object> getTranscoder() {
+        return transcoder;
+    }
 }
@@ -1,20 +1,49 @@
 package software.sitb.spring.cache.memcached;
 
+import net.rubyeye.xmemcached.GetsResponse;
 import net.rubyeye.xmemcached.MemcachedClient;
 import net.rubyeye.xmemcached.exception.MemcachedException;
+import net.rubyeye.xmemcached.transcoders.CachedData;
+import net.rubyeye.xmemcached.transcoders.Transcoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.cache.Cache;
+import org.springframework.cache.support.NullValue;
 import org.springframework.cache.support.SimpleValueWrapper;
 import org.springframework.util.Assert;
+import software.sitb.spring.cache.memcached.annotation.ExpirationContext;
+import software.sitb.spring.cache.memcached.codec.CachedDataTranscoder;
+import software.sitb.spring.cache.memcached.codec.CompactTranscoder;
+import software.sitb.spring.cache.memcached.codec.DefaultKeyEncoder;
+import software.sitb.spring.cache.memcached.codec.KeyEncoder;
+import software.sitb.spring.cache.memcached.codec.StatisticsTranscoder;
+import software.sitb.spring.cache.memcached.meta.MetaClient;
+import software.sitb.spring.cache.memcached.meta.MetaResponse;
+import software.sitb.spring.cache.memcached.metrics.MemcachedCacheMetrics;
+import software.sitb.spring.cache.memcached.metrics.MemcachedCacheMetrics.Operation;
 
-import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Memcached实现 Spring Cache
@@ -25,13 +54,154 @@ public class MemcachedCache implements Cache {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MemcachedCache.class);
 
-    private static final int TIMEOUT = 86400;
+    private static final String NAMESPACE_PREFIX = "@@ns@@";
 
-    private static final String PREFIX = "@@keys@@";
+    private static final String LEASE_PREFIX = "@@lease@@";
 
-    private static final String SPLIT = "@_______________@";
+    private static final String TAG_PREFIX = "@@tag@@";
 
-    private MemcachedClient client;
+    private static final String CHUNK_PREFIX = "@@chunk@@";
+
+    /**
+     * 本地缓存的标签版本号数量上限，超过后清空重新读取
+     */
+    private static final int MAX_TAG_VERSIONS = 10_000;
+
+    /**
+     * 标签的版本号，标签在所有缓存间共享，同一进程内清除标签后立即可见
+     */
+    private static final ConcurrentMap<String, CacheVersion> TAG_VERSIONS = new ConcurrentHashMap<>();
+
+    private static final long LEASE_POLL_INTERVAL = 20;
+
+    /**
+     * meta 协议下未配置 leaseExpiration 时，未命中创建的占位值的存活时间，单位秒
+     */
+    private static final int DEFAULT_META_LEASE_EXPIRATION = 30;
+
+    /**
+     * compute、putIfAbsent 遇到并发修改时的最大尝试次数
+     */
+    private static final int MAX_CAS_ATTEMPTS = 16;
+
+    /**
+     * memcached 相对过期时间的上限（30天），超过时按Unix时间戳处理
+     */
+    private static final int MAX_RELATIVE_EXPIRATION = 60 * 60 * 24 * 30;
+
+    private final String name;
+
+    private final CacheVersion namespace;
+
+    private final long versionRefreshInterval;
+
+    /**
+     * 进程内缓存，未启用时为null
+     */
+    private final NearCache nearCache;
+
+    /**
+     * 热点key检测，未启用时为null
+     */
+    private final HotKeyDetector hotKeyDetector;
+
+    /**
+     * 热点key的本地副本，未启用时为null
+     */
+    private final NearCache hotKeyCache;
+
+    /**
+     * 堆外缓存（L2），未启用时为null
+     */
+    private final OffHeapCache offHeapCache;
+
+    /**
+     * 节点熔断器，未启用时为null
+     */
+    private final CircuitBreakers circuitBreakers;
+
+    /**
+     * meta 协议客户端，未启用时为null
+     */
+    private final MetaClient metaClient;
+
+    private final int staleExpiration;
+
+    /**
+     * 读取时是否同时续期
+     */
+    private final boolean slidingExpiration;
+
+    /**
+     * 编码后超过该字节数的值拆分为多个分块写入，0表示不拆分
+     */
+    private final int chunkSize;
+
+    /**
+     * 合并并发的单key读取，未启用时为null
+     */
+    private final GetBatcher getBatcher;
+
+    /**
+     * 正在加载中的key，同一个JVM内并发未命中时共享一次加载
+     */
+    private final ConcurrentMap<String, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+
+    /**
+     * 默认过期时间，单位秒
+     */
+    private final int expiration;
+
+    private final double expirationJitter;
+
+    private final boolean cacheNullValues;
+
+    private final boolean cacheEmptyCollections;
+
+    private final int nullValueExpiration;
+
+    private final int leaseExpiration;
+
+    private final long leaseWaitTimeout;
+
+    private final boolean refreshAhead;
+
+    private final double refreshAheadBeta;
+
+    private final Executor executor;
+
+    private final MemcachedCacheMetrics metrics = new MemcachedCacheMetrics();
+
+    /**
+     * 本缓存使用的编解码，统计编解码的字节数和耗时
+     */
+    private final StatisticsTranscoder transcoder;
+
+    private final KeyEncoder keyEncoder;
+
+    /**
+     * 用于memcached key的缓存名字，创建缓存时转换一次
+     */
+    private final String encodedName;
+
+    /**
+     * 第一次访问memcached时创建客户端
+     */
+    private final Supplier<MemcachedClient> clientFactory;
+
+    private volatile MemcachedClient client;
+
+    /**
+     * 第一次访问副本集群时创建客户端，未配置副本集群时为null
+     */
+    private final Supplier<MemcachedClient> replicaFactory;
+
+    private volatile MemcachedClient replicaClient;
+
+    /**
+     * 对冲读取，未配置副本集群时为null
+     */
+    private final HedgedReader hedgedReader;
 
     /**
      * 创建一个Memcached存储工具
@@ -39,15 +209,106 @@ public class MemcachedCache implements Cache {
      * @param client CacheDefault 客户端
      */
     public MemcachedCache(MemcachedClient client, String name) {
-        Assert.notNull(name, "Name must not be null");
+        this(client, name, new MemcachedConfig());
+    }
+
+    /**
+     * 创建一个Memcached存储工具
+     *
+     * @param client CacheDefault 客户端
+     * @param name   缓存名字
+     * @param config 缓存配置
+     */
+    @SuppressWarnings("unchecked")
+    public MemcachedCache(MemcachedClient client, String name, MemcachedConfig config) {
+        this(() -> client, client.getTranscoder(), name, config);
         this.client = client;
-        client.setName(name);
-        try {
-            if(null == client.get(PREFIX + name)){
-                client.set(PREFIX+ name,Integer.MAX_VALUE,"");
-            }
-        } catch (TimeoutException | InterruptedException | MemcachedException e) {
-            throw new RuntimeException(e);
+    }
+
+    /**
+     * 创建一个Memcached存储工具，第一次访问memcached时才创建客户端，构造时不访问网络
+     *
+     * @param clientFactory 创建客户端，只会调用一次
+     * @param transcoder    客户端使用的编解码实现
+     * @param name          缓存名字
+     * @param config        缓存配置
+     */
+    public MemcachedCache(Supplier<MemcachedClient> clientFactory, Transcoder<Object> transcoder, String name, MemcachedConfig config) {
+        this(clientFactory, null, transcoder, name, config);
+    }
+
+    /**
+     * 创建一个写入主、副本两个集群的Memcached存储工具，读取主集群较慢时对冲读取副本集群
+     *
+     * @param clientFactory  创建主集群客户端，只会调用一次
+     * @param replicaFactory 创建副本集群客户端，只会调用一次，为null时不使用副本集群
+     * @param transcoder     客户端使用的编解码实现
+     * @param name           缓存名字
+     * @param config         缓存配置
+     */
+    public MemcachedCache(Supplier<MemcachedClient> clientFactory, Supplier<MemcachedClient> replicaFactory,
+                          Transcoder<Object> transcoder, String name, MemcachedConfig config) {
+        Assert.notNull(name, "Name must not be null");
+        this.name = name;
+        // 创建失败后在熔断试探间隔内不再重试，期间访问按节点不可用处理
+        long retryInterval = null == config.getBreakerOpenDuration() ? 5000L : config.getBreakerOpenDuration();
+        this.clientFactory = new ClientFactory(clientFactory, retryInterval);
+        this.replicaFactory = null == replicaFactory ? null : new ClientFactory(replicaFactory, retryInterval);
+        this.transcoder = new StatisticsTranscoder(transcoder, metrics.getValueSizes());
+        this.keyEncoder = null == config.getKeyEncoder() ? new DefaultKeyEncoder() : config.getKeyEncoder();
+        this.encodedName = keyEncoder.encodeName(name);
+        this.namespace = new CacheVersion(NAMESPACE_PREFIX + encodedName, config.getNamespaceRefreshInterval());
+        this.versionRefreshInterval = config.getNamespaceRefreshInterval();
+        this.expiration = config.getExpiration();
+        this.expirationJitter = null == config.getExpirationJitter() ? 0 : config.getExpirationJitter();
+        this.cacheNullValues = Boolean.TRUE.equals(config.getCacheNullValues());
+        this.cacheEmptyCollections = Boolean.TRUE.equals(config.getCacheEmptyCollections());
+        this.nullValueExpiration = config.getNullValueExpiration();
+        this.leaseExpiration = null == config.getLeaseExpiration() ? 0 : config.getLeaseExpiration();
+        this.leaseWaitTimeout = config.getLeaseWaitTimeout();
+        this.refreshAhead = Boolean.TRUE.equals(config.getRefreshAhead());
+        this.refreshAheadBeta = config.getRefreshAheadBeta();
+        this.executor = null == config.getExecutor() ? CacheExecutors.getDefault() : config.getExecutor();
+        Integer nearCacheMaximumSize = config.getNearCacheMaximumSize();
+        if (null != nearCacheMaximumSize && nearCacheMaximumSize > 0) {
+            this.nearCache = new NearCache(nearCacheMaximumSize, config.getNearCacheExpiration());
+        } else {
+            this.nearCache = null;
+        }
+        Integer hotKeyThreshold = config.getHotKeyThreshold();
+        if (null != hotKeyThreshold && hotKeyThreshold > 0) {
+            this.hotKeyDetector = new HotKeyDetector(hotKeyThreshold, config.getHotKeyMaximumSize());
+            this.hotKeyCache = new NearCache(config.getHotKeyMaximumSize(), config.getHotKeyExpiration());
+        } else {
+            this.hotKeyDetector = null;
+            this.hotKeyCache = null;
+        }
+        this.circuitBreakers = Boolean.TRUE.equals(config.getCircuitBreaker()) ? new CircuitBreakers(this::getClient, config, CacheExecutors.getScheduler()) : null;
+        this.metaClient = Boolean.TRUE.equals(config.getMetaProtocol())
+                ? new MetaClient(this::getClient, null == config.getConnectTimeout() ? MemcachedClient.DEFAULT_CONNECT_TIMEOUT : config.getConnectTimeout())
+                : null;
+        this.staleExpiration = null == config.getStaleExpiration() ? 0 : config.getStaleExpiration();
+        this.slidingExpiration = Boolean.TRUE.equals(config.getSlidingExpiration());
+        this.chunkSize = null == config.getChunkSize() ? 0 : config.getChunkSize();
+        Long batchWindow = config.getBatchWindow();
+        // 批量读取不能续期，滑动过期时逐个 getAndTouch
+        if (null != batchWindow && batchWindow > 0 && null == metaClient && !slidingExpiration) {
+            // 调用方可能在 executor 中等待批量读取，批量读取放在单独的线程池，避免线程都在等待时饿死
+            this.getBatcher = new GetBatcher(name, this::fetchAll, batchWindow, config.getBatchSize(), CacheExecutors.getBlocking());
+        } else {
+            this.getBatcher = null;
+        }
+        if (null != replicaFactory) {
+            this.hedgedReader = new HedgedReader(config.getHedgeDelayPercentile(), config.getHedgeMinimumDelay(),
+                    config.getHedgeBudget(), CacheExecutors.getBlocking());
+        } else {
+            this.hedgedReader = null;
+        }
+        Long offHeapCapacity = config.getOffHeapCapacity();
+        if (null != offHeapCapacity && offHeapCapacity > 0) {
+            this.offHeapCache = OffHeapCache.create(config.getOffHeapDirectory(), name, offHeapCapacity, config.getOffHeapExpiration());
+        } else {
+            this.offHeapCache = null;
         }
     }
 
@@ -56,7 +317,7 @@ public class MemcachedCache implements Cache {
      */
     @Override
     public String getName() {
-        return client.getName();
+        return name;
     }
 
     /**
@@ -69,13 +330,17 @@ public class MemcachedCache implements Cache {
 
     @Override
     public ValueWrapper get(Object key) {
+        long start = System.nanoTime();
         Object obj = null;
         try {
-            obj = getClient().get(getKey(key));
+            obj = find(getKey(key));
         } catch (TimeoutException | InterruptedException | MemcachedException e) {
+            metrics.error();
             LOGGER.error(e.getMessage(), e);
+        } finally {
+            metrics.record(Operation.GET, start);
         }
-        return toWrapper(obj);
+        return null == obj ? null : new SimpleValueWrapper(fromStoreValue(obj));
     }
 
     /**
@@ -99,12 +364,17 @@ public class MemcachedCache implements Cache {
      * @since 4.0
      */
     @Override
+    @SuppressWarnings("unchecked")
     public <T> T get(Object key, Class<T> type) {
+        long start = System.nanoTime();
         T value = null;
         try {
-            value = getClient().get(getKey(key));
+            value = (T) fromStoreValue(find(getKey(key)));
         } catch (TimeoutException | InterruptedException | MemcachedException e) {
+            metrics.error();
             LOGGER.error(e.getMessage(), e);
+        } finally {
+            metrics.record(Operation.GET, start);
         }
         if (value != null && type != null && !type.isInstance(value)) {
             throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
@@ -112,18 +382,279 @@ public class MemcachedCache implements Cache {
         return value;
     }
 
+    /**
+     * 未命中时加载并写入缓存。
+     * <p>
+     * 同一个JVM内对同一个key的并发未命中只执行一次valueLoader；
+     * 配置了 leaseExpiration 时，通过memcached add 抢占加载锁，没抢到的节点等待其他节点写入结果。
+     * 开启提前刷新时，命中的值接近过期会在后台重新加载，当前请求直接返回旧值。
+     * 使用 meta 协议时由memcached分配加载权，见 {@link #getWithMetaLease(Object, String, Callable)}。
+     */
     @Override
+    @SuppressWarnings("unchecked")
     public <T> T get(Object key, Callable<T> valueLoader) {
         try {
-            T value = client.get(getKey(key));
-            if(null == value){
-                value = valueLoader.call();
-                put(key, value);
+            String cacheKey = getKey(key);
+            if (null != metaClient) {
+                return (T) getWithMetaLease(key, cacheKey, valueLoader);
+            }
+            long start = System.nanoTime();
+            Object stored = find(cacheKey);
+            metrics.record(Operation.GET, start);
+            if (null != stored) {
+                refreshIfNeeded(key, cacheKey, stored, valueLoader);
+                return (T) fromStoreValue(stored);
+            }
+            return loadOnce(cacheKey, () -> load(key, cacheKey, valueLoader));
+        } catch (Throwable e) {
+            metrics.error();
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+    }
+
+    /**
+     * meta 协议下一次 {@code mg N} 同时完成读取和抢占加载权：
+     * 拿到加载权（W）的请求加载并写入，值已被标记失效时先返回旧值，在后台重新加载；
+     * 其他请求返回失效的旧值（X），或等待占位值被替换，超时后自行加载
+     */
+    private Object getWithMetaLease(Object key, String cacheKey, Callable<?> valueLoader) throws Throwable {
+        long start = System.nanoTime();
+        Object local = lookupLocal(cacheKey);
+        if (null != local) {
+            if (isCurrent(local)) {
+                metrics.hit();
+                metrics.record(Operation.GET, start);
+                refreshIfNeeded(key, cacheKey, local, valueLoader);
+                return fromStoreValue(local);
+            }
+            invalidateLocal(cacheKey);
+        }
+        int vivify = leaseExpiration > 0 ? leaseExpiration : DEFAULT_META_LEASE_EXPIRATION;
+        int touch = slidingExpiration ? jitter(resolveExpiration()) : 0;
+        MetaResponse response = remote(cacheKey, opTimeout -> metaClient.get(cacheKey, vivify, touch, opTimeout), null);
+        metrics.record(Operation.GET, start);
+        CachedData data = null == response ? null : data(response);
+        Object stored = null == data ? null : transcoder.decode(data);
+        if (stored instanceof ChunkedValue) {
+            data = join(cacheKey, (ChunkedValue) stored, touch);
+            stored = null == data ? null : transcoder.decode(data);
+        }
+        if (null != stored && !isCurrent(stored)) {
+            stored = null;
+        }
+        if (null != stored) {
+            metrics.hit();
+            metrics.remoteHit(1);
+            if (response.isStale()) {
+                if (response.isWin()) {
+                    refresh(key, cacheKey, stored, valueLoader);
+                }
+            } else {
+                cacheLocal(cacheKey, stored, data);
+                refreshIfNeeded(key, cacheKey, stored, valueLoader);
+            }
+            return fromStoreValue(stored);
+        }
+        metrics.miss();
+        metrics.remoteMiss(1);
+        if (null != response && !response.isWin() && response.isWinSent()) {
+            return loadOnce(cacheKey, () -> {
+                Object loaded = awaitLeased(cacheKey);
+                return null != loaded ? fromStoreValue(loaded) : loadAndStore(key, valueLoader);
+            });
+        }
+        if (null != response && response.isWin()) {
+            return loadOnce(cacheKey, () -> loadAndStore(key, cacheKey, valueLoader, resolveExpiration(), response));
+        }
+        return loadOnce(cacheKey, () -> loadAndStore(key, valueLoader));
+    }
+
+    /**
+     * 同一个JVM内对同一个key的并发加载只执行一次
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T loadOnce(String cacheKey, Callable<T> loader) throws Throwable {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = loading.putIfAbsent(cacheKey, future);
+        if (null != existing) {
+            try {
+                return (T) existing.get();
+            } catch (ExecutionException e) {
+                throw e.getCause();
             }
+        }
+        try {
+            T value = loader.call();
+            future.complete(value);
             return value;
         } catch (Throwable e) {
-            throw new ValueRetrievalException(key,valueLoader,e);
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(cacheKey, future);
+        }
+    }
+
+    private void refreshIfNeeded(Object key, String cacheKey, Object stored, Callable<?> valueLoader) {
+        Object untagged = stored instanceof TaggedValue ? ((TaggedValue) stored).getValue() : stored;
+        if (untagged instanceof RefreshAheadValue && ((RefreshAheadValue) untagged).shouldRefresh(refreshAheadBeta)) {
+            refresh(key, cacheKey, stored, valueLoader);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T load(Object key, String cacheKey, Callable<T> valueLoader) throws Exception {
+        String leaseKey = keyEncoder.encode(LEASE_PREFIX, 0, cacheKey);
+        boolean leased = leaseExpiration <= 0 || acquireLease(leaseKey);
+        if (!leased) {
+            Object stored = awaitLoaded(cacheKey);
+            if (null != stored) {
+                return (T) fromStoreValue(stored);
+            }
+        }
+        try {
+            return loadAndStore(key, valueLoader);
+        } finally {
+            if (leaseExpiration > 0 && leased) {
+                releaseLease(leaseKey);
+            }
+        }
+    }
+
+    private <T> T loadAndStore(Object key, Callable<T> valueLoader) throws Exception {
+        return loadAndStore(key, null, valueLoader, resolveExpiration(), null);
+    }
+
+    /**
+     * @param cacheKey memcached key，lease 不为null时用于删除占位值
+     * @param timeout  过期时间，单位秒
+     * @param lease    拿到加载权的 mg 响应，为null时不是通过 mg 拿到的加载权；
+     *                 加载失败或没有写入（如不缓存的null）时删除 mg N 创建的占位值，
+     *                 否则其他请求在占位值过期前都会等待 leaseWaitTimeout 后再各自加载
+     */
+    private <T> T loadAndStore(Object key, String cacheKey, Callable<T> valueLoader, int timeout, MetaResponse lease) throws Exception {
+        boolean stored = false;
+        try {
+            long start = System.nanoTime();
+            T value = valueLoader.call();
+            metrics.record(Operation.LOAD, start);
+            stored = store(key, value, timeout, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return value;
+        } finally {
+            if (null != lease && !stored) {
+                releasePlaceholder(cacheKey, lease.getCas());
+            }
+        }
+    }
+
+    /**
+     * 删除 mg N 创建的占位值，cas 不一致（已被其他请求写入）时不删除，失败只记录日志
+     */
+    private void releasePlaceholder(String cacheKey, long cas) {
+        try {
+            remote(cacheKey, opTimeout -> metaClient.delete(cacheKey, cas, opTimeout), null);
+        } catch (TimeoutException | InterruptedException | MemcachedException e) {
+            metrics.error();
+            LOGGER.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 后台重新加载，加载期间同一个key的其他请求继续使用旧值；
+     * 配置了加载锁时只有抢到锁的节点刷新
+     */
+    private void refresh(Object key, String cacheKey, Object stale, Callable<?> valueLoader) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        if (null != loading.putIfAbsent(cacheKey, future)) {
+            return;
+        }
+        Object staleValue = fromStoreValue(stale);
+        // ExpirationContext 是调用线程的 ThreadLocal，在切换线程前取出过期时间
+        int timeout = resolveExpiration();
+        try {
+            executor.execute(() -> {
+                String leaseKey = keyEncoder.encode(LEASE_PREFIX, 0, cacheKey);
+                // meta 协议的加载权由 mg 分配，不再使用 add 加载锁
+                boolean useLease = null == metaClient && leaseExpiration > 0;
+                boolean leased = !useLease || acquireLease(leaseKey);
+                try {
+                    future.complete(leased ? loadAndStore(key, null, valueLoader, timeout, null) : staleValue);
+                } catch (Throwable e) {
+                    metrics.error();
+                    LOGGER.error("缓存提前刷新失败[{}]", cacheKey, e);
+                    future.complete(staleValue);
+                } finally {
+                    loading.remove(cacheKey, future);
+                    if (useLease && leased) {
+                        releaseLease(leaseKey);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            loading.remove(cacheKey, future);
+            future.complete(staleValue);
+        }
+    }
+
+    /**
+     * 抢占加载锁，memcached 不可用时视为抢到，由本节点自行加载
+     */
+    private boolean acquireLease(String leaseKey) {
+        try {
+            return remote(leaseKey, opTimeout -> client().add(leaseKey, leaseExpiration, Boolean.TRUE, opTimeout), true);
+        } catch (TimeoutException | InterruptedException | MemcachedException e) {
+            metrics.error();
+            LOGGER.error(e.getMessage(), e);
+            return true;
+        }
+    }
+
+    private void releaseLease(String leaseKey) {
+        try {
+            client().deleteWithNoReply(leaseKey);
+        } catch (InterruptedException | MemcachedException e) {
+            metrics.error();
+            LOGGER.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 等待持有加载锁的节点写入结果
+     *
+     * @return memcached中的值，等待超时返回null
+     */
+    private Object awaitLoaded(String cacheKey) throws InterruptedException, MemcachedException, TimeoutException {
+        long deadline = System.currentTimeMillis() + leaseWaitTimeout;
+        while (System.currentTimeMillis() < deadline) {
+            Thread.sleep(LEASE_POLL_INTERVAL);
+            Object value = lookup(cacheKey);
+            if (null != value) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 等待拿到 mg 加载权的请求写入结果；占位值已被删除（加载失败或没有写入）时不再等待
+     *
+     * @return memcached中的值，等待超时或占位值已被删除返回null
+     */
+    private Object awaitLeased(String cacheKey) throws InterruptedException, MemcachedException, TimeoutException {
+        long deadline = System.currentTimeMillis() + leaseWaitTimeout;
+        while (System.currentTimeMillis() < deadline) {
+            Thread.sleep(LEASE_POLL_INTERVAL);
+            MetaResponse response = remote(cacheKey, opTimeout -> metaClient.get(cacheKey, 0, 0, opTimeout), null);
+            if (null == response || !response.isHit()) {
+                return null;
+            }
+            CachedData data = data(response);
+            Object value = null == data ? null : resolve(cacheKey, transcoder.decode(data), 0);
+            if (null != value && isCurrent(value)) {
+                return value;
+            }
         }
+        return null;
     }
 
     /**
@@ -136,7 +667,7 @@ public class MemcachedCache implements Cache {
      */
     @Override
     public void put(Object key, Object value) {
-        put(key, value, TIMEOUT);
+        put(key, value, resolveExpiration());
     }
 
     /**
@@ -145,96 +676,1428 @@ public class MemcachedCache implements Cache {
      * @param timeout timeout 单位秒
      */
     public void put(Object key, Object value, int timeout) {
+        store(key, value, timeout, 0);
+    }
+
+    /**
+     * 带标签写入，通过 {@link #evictTag(String)} 可以一次清除带有某个标签的所有值
+     *
+     * @param key   缓存key
+     * @param value 值
+     * @param tags  标签，例如 {@code tenant:42}
+     */
+    public void put(Object key, Object value, String... tags) {
+        put(key, value, resolveExpiration(), tags);
+    }
+
+    /**
+     * 带标签写入，通过 {@link #evictTag(String)} 可以一次清除带有某个标签的所有值
+     *
+     * @param key     缓存key
+     * @param value   值
+     * @param timeout timeout 单位秒
+     * @param tags    标签，例如 {@code tenant:42}
+     */
+    public void put(Object key, Object value, int timeout, String... tags) {
+        store(key, value, timeout, 0, tags);
+    }
+
+    private boolean store(Object key, Object value, int timeout, long delta) {
+        return store(key, value, timeout, delta, null);
+    }
+
+    /**
+     * @param delta 加载耗时，单位毫秒，用于提前刷新
+     * @param tags  标签，可以为null
+     * @return 是否写入了memcached
+     */
+    private boolean store(Object key, Object value, int timeout, long delta, String[] tags) {
+        if (!isStorable(value))
+            return false;
+        long start = System.nanoTime();
         try {
-            if (null == value)
-                return;
-            if (value instanceof Collection && ((Collection) value).size() == 0) {
-                return;
+            String cacheKey = getKey(key);
+            int ttl = expirationFor(value, timeout);
+            Object storeValue = toStoreValue(value, ttl, delta, tags);
+            CachedData encoded = transcoder.encode(storeValue);
+            CachedData data = chunk(cacheKey, ttl, encoded);
+            ChunkedValue previous = currentManifest(cacheKey);
+            boolean stored;
+            if (null == metaClient) {
+                stored = remote(cacheKey, opTimeout -> client().set(cacheKey, ttl, data, CachedDataTranscoder.INSTANCE, opTimeout), false);
+            } else {
+                MetaResponse response = remote(cacheKey, opTimeout -> metaClient.set(cacheKey, data.getFlag(), data.getData(), ttl, opTimeout), null);
+                stored = null != response && response.isSuccess();
             }
-            if (value instanceof Object[] && ((Object[]) value).length == 0) {
-                return;
+            replicate(cacheKey, ttl, data);
+            if (stored) {
+                deleteChunks(cacheKey, previous);
             }
-            getClient().set(getKey(key), timeout, value);
+            metrics.put();
+            writeLocal(cacheKey, storeValue, encoded, ttl);
+            return stored;
         } catch (TimeoutException | InterruptedException | MemcachedException e) {
+            metrics.error();
             LOGGER.error(e.getMessage(), e);
+        } finally {
+            metrics.record(Operation.PUT, start);
         }
-
+        return false;
     }
 
-    @Override
-    public ValueWrapper putIfAbsent(Object key, Object value) {
+    /**
+     * 批量获取，memcached 客户端会按服务器分组后一次性发送
+     *
+     * @param keys 缓存key
+     * @param <K>  key类型
+     * @return 命中的key和值，key为传入的原始key对象；缓存的null值对应的值为null
+     */
+    public <K> Map<K, Object> getAll(Collection<K> keys) {
+        long start = System.nanoTime();
+        Map<K, Object> result = new HashMap<>(keys.size());
         try {
-            Object existingValue = getClient().get(getKey(key));
-            if (null == existingValue) {
-                getClient().set((String) key, TIMEOUT, value);
-                return null;
-            } else
-                return toWrapper(existingValue);
+            Map<String, K> pending = new HashMap<>(keys.size());
+            for (K key : keys) {
+                String cacheKey = getKey(key);
+                Object value = lookupLocal(cacheKey);
+                if (null != value && !isCurrent(value)) {
+                    invalidateLocal(cacheKey);
+                    value = null;
+                }
+                if (null == value) {
+                    pending.put(cacheKey, key);
+                } else {
+                    result.put(key, fromStoreValue(value));
+                }
+            }
+            if (!pending.isEmpty()) {
+                Map<String, CachedData> values = fetchAll(pending.keySet());
+                int touch = slidingExpiration && !values.isEmpty() ? jitter(resolveExpiration()) : 0;
+                if (touch > 0) {
+                    touchAsync(values.keySet(), touch);
+                }
+                metrics.remoteHit(values.size());
+                metrics.remoteMiss(pending.size() - values.size());
+                for (Map.Entry<String, CachedData> entry : values.entrySet()) {
+                    CachedData data = entry.getValue();
+                    Object value = transcoder.decode(data);
+                    if (value instanceof ChunkedValue) {
+                        data = join(entry.getKey(), (ChunkedValue) value, touch);
+                        value = null == data ? null : transcoder.decode(data);
+                    }
+                    if (null == value || !isCurrent(value)) {
+                        continue;
+                    }
+                    cacheLocal(entry.getKey(), value, data);
+                    result.put(pending.get(entry.getKey()), fromStoreValue(value));
+                }
+            }
         } catch (TimeoutException | InterruptedException | MemcachedException e) {
+            metrics.error();
             LOGGER.error(e.getMessage(), e);
+        } finally {
+            metrics.hit(result.size());
+            metrics.miss(keys.size() - result.size());
+            metrics.record(Operation.GET_ALL, start);
         }
-        return null;
+        return result;
     }
 
     /**
-     * Evict the mapping for this key from this cache if it is present.
+     * 批量写入，使用 noreply 命令连续发送，不等待服务器逐条响应
      *
-     * @param key the key whose mapping is to be removed from the cache
+     * @param values key和值
      */
-    @Override
-    public void evict(Object key) {
-        try {
-            getClient().delete(getKey(key));
-        } catch (TimeoutException | InterruptedException | MemcachedException e) {
-            LOGGER.error(e.getMessage(), e);
-        }
+    public void putAll(Map<?, ?> values) {
+        putAll(values, resolveExpiration());
     }
 
     /**
-     * Remove all mappings from the cache.
+     * 批量写入，使用 noreply 命令连续发送，不等待服务器逐条响应
+     *
+     * @param values  key和值
+     * @param timeout timeout 单位秒
      */
-    @Override
-    public void clear() {
+    public void putAll(Map<?, ?> values, int timeout) {
+        long start = System.nanoTime();
         try {
-            String keyStr = getClient().get(PREFIX + this.getName());
-            if(null == keyStr){
-                return;
-            }
-            String[] keys = keyStr.split(SPLIT);
-            for (String key : keys){
-                getClient().delete(key);
+            for (Map.Entry<?, ?> entry : values.entrySet()) {
+                Object value = entry.getValue();
+                if (!isStorable(value)) {
+                    continue;
+                }
+                String cacheKey = getKey(entry.getKey());
+                int ttl = expirationFor(value, timeout);
+                Object storeValue = toStoreValue(value, ttl, 0, null);
+                CachedData encoded = transcoder.encode(storeValue);
+                CachedData data = chunk(cacheKey, ttl, encoded);
+                if (null == circuitBreakers || circuitBreakers.isAvailable(cacheKey)) {
+                    ChunkedValue previous = currentManifest(cacheKey);
+                    client().setWithNoReply(cacheKey, ttl, data, CachedDataTranscoder.INSTANCE);
+                    deleteChunks(cacheKey, previous);
+                }
+                replicate(cacheKey, ttl, data);
+                metrics.put();
+                writeLocal(cacheKey, storeValue, encoded, ttl);
             }
         } catch (TimeoutException | InterruptedException | MemcachedException e) {
+            metrics.error();
             LOGGER.error(e.getMessage(), e);
+        } finally {
+            metrics.record(Operation.PUT_ALL, start);
         }
     }
 
-
-    private ValueWrapper toWrapper(Object value) {
-        return (value == null ? null : new SimpleValueWrapper(value));
-    }
-
-
-    public MemcachedClient getClient() {
-        return client;
+    /**
+     * 异步获取，在后台线程池中执行，每个调用占用一个线程直到读取完成；线程池已满时在调用线程执行
+     *
+     * @param key 缓存key
+     * @return 未命中时结果为null
+     */
+    public CompletableFuture<ValueWrapper> getAsync(Object key) {
+        return async(() -> get(key));
     }
 
-    public void setClient(MemcachedClient client) {
-        this.client = client;
+    /**
+     * 异步批量获取
+     *
+     * @param keys 缓存key
+     * @param <K>  key类型
+     * @return 命中的key和值
+     */
+    public <K> CompletableFuture<Map<K, Object>> getAllAsync(Collection<K> keys) {
+        return async(() -> getAll(keys));
+    }
+
+    /**
+     * 异步写入，使用 noreply 命令，不等待服务器响应
+     *
+     * @param key   缓存key
+     * @param value 值
+     * @return 命令发出后完成
+     */
+    public CompletableFuture<Void> putAsync(Object key, Object value) {
+        return putAsync(key, value, resolveExpiration());
+    }
+
+    /**
+     * 异步写入，使用 noreply 命令，不等待服务器响应
+     *
+     * @param key     缓存key
+     * @param value   值
+     * @param timeout timeout 单位秒
+     * @return 命令发出后完成
+     */
+    public CompletableFuture<Void> putAsync(Object key, Object value, int timeout) {
+        return async(() -> {
+            putAll(Collections.singletonMap(key, value), timeout);
+            return null;
+        });
+    }
+
+    /**
+     * 异步获取，未命中时结果为null
+     *
+     * @param key 缓存key
+     * @return 缓存的值
+     */
+    public CompletableFuture<?> retrieve(Object key) {
+        return getAsync(key).thenApply(wrapper -> null == wrapper ? null : wrapper.get());
+    }
+
+    /**
+     * 异步获取，未命中时调用 valueLoader 加载并写入缓存，同一个key的并发加载只执行一次
+     *
+     * @param key         缓存key
+     * @param valueLoader 异步加载
+     * @param <T>         值类型
+     * @return 缓存的值或加载结果
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> retrieve(Object key, Supplier<CompletableFuture<T>> valueLoader) {
+        return getAsync(key).thenCompose(wrapper -> {
+            if (null != wrapper) {
+                return CompletableFuture.completedFuture((T) wrapper.get());
+            }
+            return loadAsync(key, valueLoader);
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> loadAsync(Object key, Supplier<CompletableFuture<T>> valueLoader) {
+        String cacheKey;
+        try {
+            cacheKey = getKey(key);
+        } catch (TimeoutException | InterruptedException | MemcachedException e) {
+            metrics.error();
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = loading.putIfAbsent(cacheKey, future);
+        if (null != existing) {
+            return (CompletableFuture<T>) existing;
+        }
+        // 回调在其他线程执行，提前取当前方法指定的过期时间
+        int timeout = resolveExpiration();
+        long start = System.nanoTime();
+        CompletableFuture<T> loaded;
+        try {
+            loaded = valueLoader.get();
+        } catch (Throwable e) {
+            loaded = new CompletableFuture<>();
+            loaded.completeExceptionally(e);
+        }
+        loaded.whenComplete((value, e) -> {
+            loading.remove(cacheKey, future);
+            if (null != e) {
+                metrics.error();
+                future.completeExceptionally(e);
+                return;
+            }
+            metrics.record(Operation.LOAD, start);
+            putAsync(key, value, timeout);
+            future.complete(value);
+        });
+        return (CompletableFuture<T>) future;
+    }
+
+    /**
+     * 在后台线程池中执行，线程池已满时在调用线程执行（调用方限流），不返回失败的Future
+     */
+    private <T> CompletableFuture<T> async(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Runnable runnable = () -> {
+            try {
+                future.complete(task.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        };
+        try {
+            executor.execute(runnable);
+        } catch (RejectedExecutionException e) {
+            runnable.run();
+        }
+        return future;
+    }
+
+    /**
+     * 不存在时写入，通过 memcached add 一次往返完成；已存在但标签已被清除的值通过 cas 覆盖
+     *
+     * @param key   the key with which the specified value is to be associated
+     * @param value the value to be associated with the specified key
+     * @return 已存在的值，缓存的null返回值为null的 ValueWrapper；写入成功返回null
+     * @throws ConcurrentModificationException 并发修改超过重试次数，没有写入
+     */
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        if (!isStorable(value)) {
+            return get(key);
+        }
+        long start = System.nanoTime();
+        try {
+            String cacheKey = getKey(key);
+            requireAvailable(cacheKey);
+            int ttl = expirationFor(value, resolveExpiration());
+            Object storeValue = toStoreValue(value, ttl, 0, null);
+            CachedData encoded = transcoder.encode(storeValue);
+            CachedData data = chunk(cacheKey, ttl, encoded);
+            for (int i = 0; i < MAX_CAS_ATTEMPTS; i++) {
+                if (remote(cacheKey, opTimeout -> client().add(cacheKey, ttl, data, CachedDataTranscoder.INSTANCE, opTimeout), false)) {
+                    replicate(cacheKey, ttl, data);
+                    metrics.put();
+                    writeLocal(cacheKey, storeValue, encoded, ttl);
+                    return null;
+                }
+                GetsResponse<CachedData> current = remote(cacheKey, opTimeout -> client().gets(cacheKey, opTimeout, CachedDataTranscoder.INSTANCE), null);
+                if (null == current) {
+                    backoff(i);
+                    continue;
+                }
+                // 正在加载的占位值视为不存在，通过 cas 覆盖
+                Object currentStored = isPlaceholder(current.getValue()) ? null : transcoder.decode(current.getValue());
+                Object existing = resolve(cacheKey, currentStored, 0);
+                if (null != existing && isCurrent(existing)) {
+                    // 缓存的null也是已存在的值，不能返回null（表示已写入）
+                    return new SimpleValueWrapper(fromStoreValue(existing));
+                }
+                if (remote(cacheKey, opTimeout -> client().cas(cacheKey, ttl, data, CachedDataTranscoder.INSTANCE, opTimeout, current.getCas()), false)) {
+                    replicate(cacheKey, ttl, data);
+                    deleteChunks(cacheKey, currentStored);
+                    metrics.put();
+                    writeLocal(cacheKey, storeValue, encoded, ttl);
+                    return null;
+                }
+                backoff(i);
+            }
+            metrics.error();
+            throw new ConcurrentModificationException("[" + cacheKey + "] 并发修改次数超过" + MAX_CAS_ATTEMPTS + "次，放弃写入");
+        } catch (TimeoutException | InterruptedException | MemcachedException e) {
+            metrics.error();
+            LOGGER.error(e.getMessage(), e);
+        } finally {
+            metrics.record(Operation.PUT, start);
+        }
+        return null;
+    }
+
+    /**
+     * 只在已存在时写入，通过 memcached replace 一次往返完成
+     *
+     * @param key   缓存key
+     * @param value 值
+     * @return 是否写入
+     */
+    public boolean replace(Object key, Object value) {
+        return replace(key, value, resolveExpiration());
+    }
+
+    /**
+     * 只在已存在时写入，通过 memcached replace 一次往返完成
+     *
+     * @param key     缓存key
+     * @param value   值
+     * @param timeout timeout 单位秒
+     * @return 是否写入
+     */
+    public boolean replace(Object key, Object value, int timeout) {
+        if (!isStorable(value)) {
+            return false;
+        }
+        long start = System.nanoTime();
+        try {
+            String cacheKey = getKey(key);
+            requireAvailable(cacheKey);
+            int ttl = expirationFor(value, timeout);
+            Object storeValue = toStoreValue(value, ttl, 0, null);
+            CachedData encoded = transcoder.encode(storeValue);
+            CachedData data = chunk(cacheKey, ttl, encoded);
+            ChunkedValue previous;
+            boolean replaced;
+            if (null == metaClient) {
+                previous = currentManifest(cacheKey);
+                replaced = remote(cacheKey, opTimeout -> client().replace(cacheKey, ttl, data, CachedDataTranscoder.INSTANCE, opTimeout), false);
+            } else {
+                // mg N 创建的占位值也是一个item，replace 会把正在加载的key当作已存在，先读取确认不是占位值后通过 cas 写入
+                GetsResponse<CachedData> current = remote(cacheKey, opTimeout -> client().gets(cacheKey, opTimeout, CachedDataTranscoder.INSTANCE), null);
+                previous = null == current || chunkSize <= 0 ? null : manifest(current.getValue());
+                replaced = null != current && !isPlaceholder(current.getValue())
+                        && remote(cacheKey, opTimeout -> client().cas(cacheKey, ttl, data, CachedDataTranscoder.INSTANCE, opTimeout, current.getCas()), false);
+            }
+            if (replaced) {
+                replicate(cacheKey, ttl, data);
+                deleteChunks(cacheKey, previous);
+                metrics.put();
+                writeLocal(cacheKey, storeValue, encoded, ttl);
+                return true;
+            }
+        } catch (TimeoutException | InterruptedException | MemcachedException e) {
+            metrics.error();
+            LOGGER.error(e.getMessage(), e);
+        } finally {
+            metrics.record(Operation.PUT, start);
+        }
+        return false;
+    }
+
+    /**
+     * 原子地更新值，通过 gets/cas 重试，并发修改时 remappingFunction 可能被调用多次
+     *
+     * @param key               缓存key
+     * @param remappingFunction 参数为当前值，不存在时为null；返回null（未开启 cacheNullValues 时）删除该值
+     * @param <T>               值类型
+     * @return 新的值，删除或失败时返回null
+     * @throws ConcurrentModificationException 并发修改超过重试次数，没有更新
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T compute(Object key, Function<? super T, ? extends T> remappingFunction) {
+        long start = System.nanoTime();
+        try {
+            String cacheKey = getKey(key);
+            requireAvailable(cacheKey);
+            for (int i = 0; i < MAX_CAS_ATTEMPTS; i++) {
+                GetsResponse<CachedData> current = remote(cacheKey, opTimeout -> client().gets(cacheKey, opTimeout, CachedDataTranscoder.INSTANCE), null);
+                // 正在加载的占位值视为不存在：不删除，写入时通过 cas 覆盖
+                boolean absent = null == current || isPlaceholder(current.getValue());
+                Object currentStored = absent ? null : transcoder.decode(current.getValue());
+                Object currentValue = resolve(cacheKey, currentStored, 0);
+                T oldValue = null == currentValue || !isCurrent(currentValue) ? null : (T) fromStoreValue(currentValue);
+                T newValue = remappingFunction.apply(oldValue);
+                if (!isStorable(newValue)) {
+                    if (absent || remote(cacheKey, opTimeout -> client().delete(cacheKey, current.getCas(), opTimeout), false)) {
+                        replicateDelete(cacheKey);
+                        deleteChunks(cacheKey, currentStored);
+                        invalidateLocal(cacheKey);
+                        return null;
+                    }
+                    backoff(i);
+                    continue;
+                }
+                int ttl = expirationFor(newValue, resolveExpiration());
+                Object storeValue = toStoreValue(newValue, ttl, 0, null);
+                CachedData encoded = transcoder.encode(storeValue);
+                CachedData data = chunk(cacheKey, ttl, encoded);
+                boolean stored = null == current
+                        ? remote(cacheKey, opTimeout -> client().add(cacheKey, ttl, data, CachedDataTranscoder.INSTANCE, opTimeout), false)
+                        : remote(cacheKey, opTimeout -> client().cas(cacheKey, ttl, data, CachedDataTranscoder.INSTANCE, opTimeout, current.getCas()), false);
+                if (stored) {
+                    replicate(cacheKey, ttl, data);
+                    deleteChunks(cacheKey, currentStored);
+                    metrics.put();
+                    writeLocal(cacheKey, storeValue, encoded, ttl);
+                    return newValue;
+                }
+                backoff(i);
+            }
+            metrics.error();
+            throw new ConcurrentModificationException("[" + cacheKey + "] 并发修改次数超过" + MAX_CAS_ATTEMPTS + "次，放弃更新");
+        } catch (TimeoutException | InterruptedException | MemcachedException e) {
+            metrics.error();
+            LOGGER.error(e.getMessage(), e);
+        } finally {
+            metrics.record(Operation.COMPUTE, start);
+        }
+        return null;
+    }
+
+    /**
+     * 不存在时写入value，否则写入 remappingFunction(当前值, value)，通过 gets/cas 保证原子性
+     *
+     * @param key               缓存key
+     * @param value             不存在时写入的值
+     * @param remappingFunction 合并当前值和value
+     * @param <T>               值类型
+     * @return 新的值，删除或失败时返回null
+     * @throws ConcurrentModificationException 并发修改超过重试次数，没有更新
+     */
+    public <T> T merge(Object key, T value, BiFunction<? super T, ? super T, ? extends T> remappingFunction) {
+        Assert.notNull(value, "value must not be null");
+        return compute(key, (T oldValue) -> null == oldValue ? value : remappingFunction.apply(oldValue, value));
+    }
+
+    /**
+     * 计数器加delta，不存在时设置为初始值，一次往返完成。
+     * 计数器以文本保存在memcached中，只能通过 incr/decr 读写
+     *
+     * @param key          缓存key
+     * @param delta        增量
+     * @param initialValue 不存在时的初始值
+     * @return 计数器的新值，失败或所在节点熔断时返回null
+     */
+    public Long incr(Object key, long delta, long initialValue) {
+        return incr(key, delta, initialValue, expiration);
+    }
+
+    /**
+     * @param timeout 不存在时创建的计数器的过期时间，单位秒
+     * @see #incr(Object, long, long)
+     */
+    public Long incr(Object key, long delta, long initialValue, int timeout) {
+        return counter(key, delta, initialValue, timeout, true);
+    }
+
+    /**
+     * 计数器减delta，最小为0，不存在时设置为初始值，一次往返完成
+     *
+     * @param key          缓存key
+     * @param delta        减量
+     * @param initialValue 不存在时的初始值
+     * @return 计数器的新值，失败或所在节点熔断时返回null
+     */
+    public Long decr(Object key, long delta, long initialValue) {
+        return decr(key, delta, initialValue, expiration);
+    }
+
+    /**
+     * @param timeout 不存在时创建的计数器的过期时间，单位秒
+     * @see #decr(Object, long, long)
+     */
+    public Long decr(Object key, long delta, long initialValue, int timeout) {
+        return counter(key, delta, initialValue, timeout, false);
+    }
+
+    private Long counter(Object key, long delta, long initialValue, int timeout, boolean increment) {
+        long start = System.nanoTime();
+        try {
+            String cacheKey = getKey(key);
+            return remote(cacheKey, opTimeout -> increment
+                    ? client().incr(cacheKey, delta, initialValue, opTimeout, timeout)
+                    : client().decr(cacheKey, delta, initialValue, opTimeout, timeout), null);
+        } catch (TimeoutException | InterruptedException | MemcachedException e) {
+            metrics.error();
+            LOGGER.error(e.getMessage(), e);
+        } finally {
+            metrics.record(Operation.COUNTER, start);
+        }
+        return null;
+    }
+
+    /**
+     * Evict the mapping for this key from this cache if it is present.
+     *
+     * @param key the key whose mapping is to be removed from the cache
+     */
+    @Override
+    public void evict(Object key) {
+        long start = System.nanoTime();
+        try {
+            String cacheKey = getKey(key);
+            invalidateLocal(cacheKey);
+            // 标记失效时旧值在 staleExpiration 内仍会返回，分块需要保留
+            ChunkedValue previous = null == metaClient || staleExpiration <= 0 ? currentManifest(cacheKey) : null;
+            Object deleted = null == metaClient
+                    ? remote(cacheKey, opTimeout -> client().delete(cacheKey, opTimeout), null)
+                    : remote(cacheKey, opTimeout -> metaClient.delete(cacheKey, staleExpiration, opTimeout), null);
+            if (null == deleted) {
+                LOGGER.warn("memcached节点熔断中，[{}]只从本地缓存删除", cacheKey);
+            }
+            replicateDelete(cacheKey);
+            deleteChunks(cacheKey, previous);
+            metrics.evict();
+        } catch (TimeoutException | InterruptedException | MemcachedException e) {
+            metrics.error();
+            LOGGER.error(e.getMessage(), e);
+        } finally {
+            metrics.record(Operation.EVICT, start);
+        }
+    }
+
+    /**
+     * 清除带有该标签的所有值，只需一次incr：标签版本号变化后，写入时记录的版本号不再匹配，读取时视为不存在。
+     * 标签在所有缓存间共享，其他节点最多在 namespaceRefreshInterval 后感知
+     *
+     * @param tag 标签
+     */
+    public void evictTag(String tag) {
+        long start = System.nanoTime();
+        try {
+            CacheVersion version = tagVersion(tag);
+            if (null == remote(version.getKey(), opTimeout -> version.increment(client(), opTimeout), null)) {
+                LOGGER.warn("memcached节点熔断中，标签[{}]未能清除", tag);
+            }
+            metrics.evict();
+        } catch (TimeoutException | InterruptedException | MemcachedException e) {
+            metrics.error();
+            LOGGER.error(e.getMessage(), e);
+        } finally {
+            metrics.record(Operation.EVICT, start);
+        }
+    }
+
+    /**
+     * Remove all mappings from the cache.
+     */
+    @Override
+    public void clear() {
+        if (null != nearCache) {
+            nearCache.clear();
+        }
+        if (null != hotKeyCache) {
+            hotKeyCache.clear();
+        }
+        if (null != offHeapCache) {
+            offHeapCache.clear();
+        }
+        long start = System.nanoTime();
+        try {
+            if (null == remote(namespace.getKey(), opTimeout -> namespace.increment(client(), opTimeout), null)) {
+                LOGGER.warn("memcached节点熔断中，缓存[{}]只清空了本地缓存", getName());
+            }
+        } catch (TimeoutException | InterruptedException | MemcachedException e) {
+            metrics.error();
+            LOGGER.error(e.getMessage(), e);
+        } finally {
+            metrics.record(Operation.CLEAR, start);
+        }
+    }
+
+
+    /**
+     * 当前方法通过 {@link software.sitb.spring.cache.memcached.annotation.Expiration} 指定了过期时间时使用指定的，
+     * 否则使用缓存配置的过期时间
+     */
+    private int resolveExpiration() {
+        Integer current = ExpirationContext.current();
+        return null == current ? expiration : current;
+    }
+
+    /**
+     * 过期时间加上随机抖动，避免同一时间写入的大量key同时过期
+     *
+     * @param timeout 过期时间，单位秒，0表示不过期
+     * @return 增加 [0, timeout * expirationJitter] 秒后的过期时间，不超过30天；超过30天的Unix时间戳原样返回
+     */
+    private int jitter(int timeout) {
+        if (timeout <= 0 || timeout > MAX_RELATIVE_EXPIRATION || expirationJitter <= 0) {
+            return timeout;
+        }
+        int bound = (int) (timeout * expirationJitter);
+        return bound <= 0 ? timeout : Math.min(MAX_RELATIVE_EXPIRATION, timeout + ThreadLocalRandom.current().nextInt(bound + 1));
+    }
+
+    /**
+     * 分块比清单晚1秒过期；正好30天时加1秒会被当作已经过去的Unix时间戳，保持不变
+     */
+    private static int chunkExpiration(int ttl) {
+        return ttl <= 0 || ttl == MAX_RELATIVE_EXPIRATION ? ttl : ttl + 1;
+    }
+
+    /**
+     * null只在开启 cacheNullValues 时写入，空集合、空数组只在开启 cacheEmptyCollections 时写入
+     */
+    private boolean isStorable(Object value) {
+        if (null == value)
+            return cacheNullValues;
+        return !isEmpty(value) || cacheEmptyCollections;
+    }
+
+    private boolean isEmpty(Object value) {
+        if (value instanceof Collection && ((Collection) value).size() == 0) {
+            return true;
+        }
+        return value instanceof Object[] && ((Object[]) value).length == 0;
+    }
+
+    /**
+     * null、空集合使用单独的过期时间
+     */
+    private int expirationFor(Object value, int timeout) {
+        if (null == value || isEmpty(value)) {
+            return jitter(nullValueExpiration);
+        }
+        return jitter(timeout);
+    }
+
+    /**
+     * 查找并记录命中率
+     */
+    private Object find(String cacheKey) throws InterruptedException, MemcachedException, TimeoutException {
+        Object value = lookup(cacheKey);
+        if (null == value) {
+            metrics.miss();
+        } else {
+            metrics.hit();
+        }
+        return value;
+    }
+
+    /**
+     * 依次从进程内缓存、热点key副本、memcached中查找
+     *
+     * @param cacheKey memcached key
+     * @return 缓存的值，没有返回null
+     */
+    private Object lookup(String cacheKey) throws InterruptedException, MemcachedException, TimeoutException {
+        Object value = lookupLocal(cacheKey);
+        if (null != value) {
+            if (isCurrent(value)) {
+                return value;
+            }
+            invalidateLocal(cacheKey);
+        }
+        boolean stale = false;
+        int touch = slidingExpiration ? jitter(resolveExpiration()) : 0;
+        CachedData data = null;
+        value = null;
+        if (null != getBatcher) {
+            data = (CachedData) awaitBatched(cacheKey);
+        } else if (null == metaClient) {
+            Object fetched = null == hedgedReader
+                    ? remote(cacheKey, opTimeout -> read(client(), cacheKey, touch, opTimeout), null)
+                    : hedgedRead(cacheKey, touch);
+            if (fetched instanceof CachedData) {
+                data = (CachedData) fetched;
+            } else {
+                value = fetched;
+            }
+        } else {
+            MetaResponse response = remote(cacheKey, opTimeout -> metaClient.get(cacheKey, 0, touch, opTimeout), null);
+            // 拿到加载权时视为未命中，由调用方重新加载并写入；加载权已给其他请求时返回失效的旧值
+            data = null == response || response.isWin() ? null : data(response);
+            stale = null != response && response.isStale();
+        }
+        if (null != data) {
+            value = transcoder.decode(data);
+        }
+        if (value instanceof ChunkedValue) {
+            data = join(cacheKey, (ChunkedValue) value, touch);
+            value = null == data ? null : transcoder.decode(data);
+        }
+        if (null == value || !isCurrent(value)) {
+            metrics.remoteMiss(1);
+            return null;
+        }
+        metrics.remoteHit(1);
+        if (!stale) {
+            cacheLocal(cacheKey, value, data);
+        }
+        return value;
+    }
+
+    /**
+     * 读取单个key，滑动过期时同时续期
+     *
+     * @param touch 大于0时通过 getAndTouch 把过期时间更新为 touch 秒
+     * @return 不续期时返回未解码的 {@link CachedData}，解码后原样写入堆外缓存；
+     * getAndTouch 不能指定编码实现，续期时返回客户端解码后的值（CachedData 不能序列化，不会与解码后的值混淆）
+     */
+    private Object read(MemcachedClient memcachedClient, String cacheKey, int touch, long opTimeout) throws InterruptedException, MemcachedException, TimeoutException {
+        return touch > 0
+                ? memcachedClient.getAndTouch(cacheKey, touch, opTimeout)
+                : memcachedClient.get(cacheKey, opTimeout, CachedDataTranscoder.INSTANCE);
+    }
+
+    /**
+     * 先读主集群，超过对冲延迟后读副本集群；key所在的主集群节点熔断时直接读副本集群
+     */
+    private Object hedgedRead(String cacheKey, int touch) throws InterruptedException, MemcachedException, TimeoutException {
+        if (null != circuitBreakers && !circuitBreakers.isAvailable(cacheKey)) {
+            return readReplica(cacheKey, touch);
+        }
+        return hedgedReader.get(
+                () -> remote(cacheKey, opTimeout -> read(client(), cacheKey, touch, opTimeout), null),
+                () -> readReplica(cacheKey, touch),
+                client().getOpTimeout());
+    }
+
+    /**
+     * 从副本集群读取，读取到分块清单时同样从副本集群取回分块，返回拼接后的数据
+     */
+    private Object readReplica(String cacheKey, int touch) throws InterruptedException, MemcachedException, TimeoutException {
+        MemcachedClient replica = replicaClient();
+        Object fetched = read(replica, cacheKey, touch, replica.getOpTimeout());
+        ChunkedValue chunked = manifest(fetched);
+        return null == chunked ? fetched : join(replica, cacheKey, chunked, touch);
+    }
+
+    /**
+     * 写入副本集群，使用 noreply 命令不等待响应，失败只记录日志
+     */
+    private void replicate(String cacheKey, int ttl, CachedData data) {
+        if (null == replicaFactory) {
+            return;
+        }
+        try {
+            getReplicaClient().setWithNoReply(cacheKey, ttl, data, CachedDataTranscoder.INSTANCE);
+        } catch (InterruptedException | MemcachedException | IllegalStateException e) {
+            metrics.error();
+            LOGGER.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 从副本集群删除，使用 noreply 命令不等待响应，失败只记录日志
+     */
+    private void replicateDelete(String cacheKey) {
+        if (null == replicaFactory) {
+            return;
+        }
+        try {
+            getReplicaClient().deleteWithNoReply(cacheKey);
+        } catch (InterruptedException | MemcachedException | IllegalStateException e) {
+            metrics.error();
+            LOGGER.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 批量读取没有对应的 getAndTouch，命中的key在后台逐个续期
+     */
+    private void touchAsync(Collection<String> cacheKeys, int ttl) {
+        List<String> keys = new ArrayList<>(cacheKeys);
+        try {
+            executor.execute(() -> {
+                for (String cacheKey : keys) {
+                    try {
+                        remote(cacheKey, opTimeout -> client().touch(cacheKey, ttl, opTimeout), false);
+                    } catch (TimeoutException | InterruptedException | MemcachedException e) {
+                        metrics.error();
+                        LOGGER.error(e.getMessage(), e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("缓存[{}]续期任务被拒绝，{}个key未续期", getName(), keys.size());
+        }
+    }
+
+    /**
+     * 通过批量读取获取，等待时间与单次读取的超时相同
+     */
+    private Object awaitBatched(String cacheKey) throws InterruptedException, MemcachedException, TimeoutException {
+        try {
+            return getBatcher.get(cacheKey).get(client().getOpTimeout(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof MemcachedException) {
+                throw (MemcachedException) cause;
+            }
+            if (cause instanceof TimeoutException) {
+                throw (TimeoutException) cause;
+            }
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            throw new MemcachedException(cause);
+        }
+    }
+
+    /**
+     * 取出 mg 响应中的数据
+     *
+     * @return 写入的数据，包括已被标记失效的旧值；未命中或占位值返回null
+     */
+    private CachedData data(MetaResponse response) {
+        if (null == response || !MetaResponse.VALUE.equals(response.getStatus()) || response.isPlaceholder()) {
+            return null;
+        }
+        return new CachedData(response.getClientFlags(), response.getValue(), response.getValue().length, -1);
+    }
+
+    /**
+     * 编码后超过 chunkSize 的值先逐个写入分块（同时写入副本集群），返回写入原来的key的分块清单。
+     * 分块比清单晚1秒过期，避免清单还在时分块先过期
+     *
+     * @param data 编码后的值
+     * @return 写入memcached的数据，不超过 chunkSize 时原样返回
+     */
+    private CachedData chunk(String cacheKey, int ttl, CachedData data) throws InterruptedException, MemcachedException, TimeoutException {
+        if (chunkSize <= 0 || data.getData().length <= chunkSize) {
+            return data;
+        }
+        ChunkedValue chunked = new ChunkedValue(data.getFlag(), data.getData().length, chunkSize, ThreadLocalRandom.current().nextLong());
+        String[] chunkKeys = chunkKeys(cacheKey, chunked);
+        int chunkTtl = chunkExpiration(ttl);
+        for (int i = 0; i < chunkKeys.length; i++) {
+            String chunkKey = chunkKeys[i];
+            CachedData chunk = chunked.chunk(data.getData(), i);
+            if (!remote(chunkKey, opTimeout -> client().set(chunkKey, chunkTtl, chunk, CachedDataTranscoder.INSTANCE, opTimeout), false)) {
+                throw new MemcachedException("分块写入失败: " + chunkKey);
+            }
+            replicate(chunkKey, chunkTtl, chunk);
+        }
+        return transcoder.getDelegate().encode(chunked);
+    }
+
+    /**
+     * 分块写入的值通过一次批量读取取回所有分块并拼接，分块不完整时视为未命中
+     *
+     * @param value 从memcached读取的值，不是分块清单时原样返回
+     * @param touch 大于0时在后台同时续期所有分块
+     * @return 拼接后解码的值，分块缺失或版本戳不一致时返回null
+     */
+    private Object resolve(String cacheKey, Object value, int touch) throws InterruptedException, MemcachedException, TimeoutException {
+        if (!(value instanceof ChunkedValue)) {
+            return value;
+        }
+        CachedData data = join(cacheKey, (ChunkedValue) value, touch);
+        return null == data ? null : transcoder.decode(data);
+    }
+
+    /**
+     * 通过一次批量读取取回所有分块并拼接
+     *
+     * @param touch 大于0时在后台同时续期所有分块
+     * @return 拼接后的数据，分块缺失或版本戳不一致时返回null
+     */
+    private CachedData join(String cacheKey, ChunkedValue chunked, int touch) throws InterruptedException, MemcachedException, TimeoutException {
+        if (null != circuitBreakers) {
+            for (String chunkKey : chunkKeys(cacheKey, chunked)) {
+                if (!circuitBreakers.isAvailable(chunkKey)) {
+                    return null;
+                }
+            }
+        }
+        return join(client(), cacheKey, chunked, touch);
+    }
+
+    /**
+     * 从读取到清单的集群取回分块并拼接：清单和分块同时写入各自的集群，副本集群的清单对应的分块不一定在主集群中
+     *
+     * @param memcachedClient 读取到清单的集群
+     */
+    private CachedData join(MemcachedClient memcachedClient, String cacheKey, ChunkedValue chunked, int touch) throws InterruptedException, MemcachedException, TimeoutException {
+        String[] chunkKeys = chunkKeys(cacheKey, chunked);
+        Map<String, CachedData> chunks = memcachedClient.get(Arrays.asList(chunkKeys), memcachedClient.getOpTimeout(), CachedDataTranscoder.INSTANCE);
+        CachedData data = chunked.join(chunkKeys, chunks);
+        if (null == data) {
+            LOGGER.debug("[{}] 分块不完整，视为未命中", cacheKey);
+            return null;
+        }
+        if (touch > 0) {
+            touchAsync(Arrays.asList(chunkKeys), chunkExpiration(touch));
+        }
+        return data;
+    }
+
+    /**
+     * 开启分块时读取key当前的值，覆盖或删除成功后通过 {@link #deleteChunks(String, Object)} 删除旧的分块
+     *
+     * @return 当前的分块清单，不是分块清单、不存在或所在节点熔断时返回null
+     */
+    private ChunkedValue currentManifest(String cacheKey) throws InterruptedException, MemcachedException, TimeoutException {
+        if (chunkSize <= 0) {
+            return null;
+        }
+        return manifest(remote(cacheKey, opTimeout -> client().get(cacheKey, opTimeout, CachedDataTranscoder.INSTANCE), null));
+    }
+
+    /**
+     * @param fetched 读取到的未解码数据或解码后的值
+     * @return 分块清单，不是分块清单时返回null；{@link CompactTranscoder} 编码的数据只检查 flag，不解码
+     */
+    private ChunkedValue manifest(Object fetched) {
+        if (fetched instanceof CachedData) {
+            CachedData data = (CachedData) fetched;
+            if (isPlaceholder(data)) {
+                return null;
+            }
+            if (transcoder.getDelegate() instanceof CompactTranscoder && data.getFlag() != (CompactTranscoder.FLAG_MAGIC | CompactTranscoder.TYPE_CHUNKED)) {
+                return null;
+            }
+            fetched = transcoder.decode(data);
+        }
+        return fetched instanceof ChunkedValue ? (ChunkedValue) fetched : null;
+    }
+
+    /**
+     * 删除旧的清单列出的分块（包括副本集群），使用 noreply 命令不等待响应，失败只记录日志
+     *
+     * @param previous 被覆盖或删除的值，不是分块清单时忽略
+     */
+    private void deleteChunks(String cacheKey, Object previous) {
+        if (!(previous instanceof ChunkedValue)) {
+            return;
+        }
+        for (String chunkKey : chunkKeys(cacheKey, (ChunkedValue) previous)) {
+            if (null == circuitBreakers || circuitBreakers.isAvailable(chunkKey)) {
+                try {
+                    client().deleteWithNoReply(chunkKey);
+                } catch (InterruptedException | MemcachedException e) {
+                    metrics.error();
+                    LOGGER.error(e.getMessage(), e);
+                }
+            }
+            replicateDelete(chunkKey);
+        }
+    }
+
+    /**
+     * 分块的key包含版本戳，重新写入时使用新的key，不会覆盖正在被读取的分块
+     */
+    private String[] chunkKeys(String cacheKey, ChunkedValue chunked) {
+        String[] chunkKeys = new String[chunked.getChunkCount()];
+        String prefix = CHUNK_PREFIX + Long.toHexString(chunked.getStamp());
+        for (int i = 0; i < chunkKeys.length; i++) {
+            chunkKeys[i] = keyEncoder.encode(prefix, i, cacheKey);
+        }
+        return chunkKeys;
+    }
+
+    /**
+     * @return 带标签的值写入后标签是否没有被清除，不带标签的值始终返回true
+     */
+    private boolean isCurrent(Object storeValue) throws InterruptedException, MemcachedException, TimeoutException {
+        if (!(storeValue instanceof TaggedValue)) {
+            return true;
+        }
+        TaggedValue tagged = (TaggedValue) storeValue;
+        for (int i = 0; i < tagged.getTags().length; i++) {
+            if (currentVersion(tagVersion(tagged.getTags()[i])) != tagged.getVersions()[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private CacheVersion tagVersion(String tag) {
+        CacheVersion version = TAG_VERSIONS.get(tag);
+        if (null == version) {
+            if (TAG_VERSIONS.size() >= MAX_TAG_VERSIONS) {
+                TAG_VERSIONS.clear();
+            }
+            version = TAG_VERSIONS.computeIfAbsent(tag, t -> new CacheVersion(keyEncoder.encode(TAG_PREFIX, 0, t), versionRefreshInterval));
+        }
+        return version;
+    }
+
+    private void invalidateLocal(String cacheKey) {
+        if (null != nearCache) {
+            nearCache.invalidate(cacheKey);
+        }
+        if (null != hotKeyCache) {
+            hotKeyCache.invalidate(cacheKey);
+        }
+        if (null != offHeapCache) {
+            offHeapCache.invalidate(cacheKey);
+        }
+    }
+
+    /**
+     * 记录访问并依次从进程内缓存、热点key副本、堆外缓存查找
+     */
+    private Object lookupLocal(String cacheKey) {
+        boolean hot = null != hotKeyDetector && hotKeyDetector.record(cacheKey);
+        Object value = null;
+        if (null != nearCache) {
+            value = nearCache.get(cacheKey);
+        }
+        if (null == value && hot) {
+            value = hotKeyCache.get(cacheKey);
+        }
+        if (null == value && null != offHeapCache) {
+            CachedData data = offHeapCache.get(cacheKey);
+            if (null != data) {
+                value = transcoder.decode(data);
+                if (null != nearCache) {
+                    nearCache.put(cacheKey, value, 0);
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * 从memcached读取的值写入本地各级缓存，热点key同时写入热点副本
+     *
+     * @param data 读取到的数据（分块写入时为拼接后的数据），直接写入堆外缓存；为null时重新编码
+     */
+    private void cacheLocal(String cacheKey, Object value, CachedData data) {
+        if (null != nearCache) {
+            nearCache.put(cacheKey, value, 0);
+        }
+        if (null != hotKeyCache && hotKeyDetector.isHot(cacheKey)) {
+            hotKeyCache.put(cacheKey, value, 0);
+        }
+        if (null != offHeapCache) {
+            offHeapCache.put(cacheKey, null == data ? transcoder.getDelegate().encode(value) : data, 0);
+        }
+    }
+
+    /**
+     * 写入memcached后同步更新本地各级缓存
+     *
+     * @param data 编码后的值（不是分块清单），直接写入堆外缓存，不再重复编码
+     */
+    private void writeLocal(String cacheKey, Object storeValue, CachedData data, int ttl) {
+        if (null != nearCache) {
+            nearCache.put(cacheKey, storeValue, ttl);
+        }
+        if (null != hotKeyCache) {
+            hotKeyCache.invalidate(cacheKey);
+        }
+        if (null != offHeapCache) {
+            offHeapCache.put(cacheKey, data, ttl);
+        }
+    }
+
+    /**
+     * 转换为写入memcached的值，带标签时记录标签当前的版本号
+     */
+    private Object toStoreValue(Object value, int timeout, long delta, String[] tags) throws InterruptedException, MemcachedException, TimeoutException {
+        Object storeValue = value;
+        if (null == value) {
+            storeValue = NullValue.INSTANCE;
+        } else if (refreshAhead) {
+            storeValue = new RefreshAheadValue(value, System.currentTimeMillis(), delta, timeout);
+        }
+        if (null == tags || tags.length == 0) {
+            return storeValue;
+        }
+        long[] versions = new long[tags.length];
+        for (int i = 0; i < tags.length; i++) {
+            versions[i] = currentVersion(tagVersion(tags[i]));
+        }
+        return new TaggedValue(storeValue, tags, versions);
+    }
+
+    /**
+     * 从memcached读取的值转换为缓存的值，缓存的null转换为null
+     */
+    private Object fromStoreValue(Object storeValue) {
+        if (storeValue instanceof TaggedValue) {
+            storeValue = ((TaggedValue) storeValue).getValue();
+        }
+        if (storeValue instanceof RefreshAheadValue) {
+            return ((RefreshAheadValue) storeValue).getValue();
+        }
+        if (storeValue instanceof NullValue) {
+            return null;
+        }
+        return storeValue;
+    }
+
+
+    /**
+     * @return 客户端，第一次调用时创建
+     * @throws IllegalStateException 创建失败；失败后在重试间隔内直接抛出上次的失败
+     */
+    public MemcachedClient getClient() {
+        MemcachedClient current = client;
+        if (null == current) {
+            synchronized (this) {
+                current = client;
+                if (null == current) {
+                    current = clientFactory.get();
+                    client = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 访问memcached时获取客户端，创建失败转换为 MemcachedException，与节点不可用同样处理（计入熔断、记录错误）
+     */
+    private MemcachedClient client() throws MemcachedException {
+        try {
+            return getClient();
+        } catch (IllegalStateException e) {
+            throw new MemcachedException(e.getMessage(), e);
+        }
+    }
+
+    private MemcachedClient replicaClient() throws MemcachedException {
+        try {
+            return getReplicaClient();
+        } catch (IllegalStateException e) {
+            throw new MemcachedException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return 副本集群客户端，第一次调用时创建；未配置副本集群时返回null
+     * @throws IllegalStateException 创建失败；失败后在重试间隔内直接抛出上次的失败
+     */
+    public MemcachedClient getReplicaClient() {
+        if (null == replicaFactory) {
+            return null;
+        }
+        MemcachedClient current = replicaClient;
+        if (null == current) {
+            synchronized (this) {
+                current = replicaClient;
+                if (null == current) {
+                    current = replicaFactory.get();
+                    replicaClient = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @return 已创建的副本集群客户端，还没有创建或未配置副本集群时返回null，不会触发创建
+     */
+    public MemcachedClient getCreatedReplicaClient() {
+        return replicaClient;
+    }
+
+    /**
+     * @return 对冲读取的延迟和次数统计，未配置副本集群时为null
+     */
+    public HedgedReader getHedgedReader() {
+        return hedgedReader;
+    }
+
+    /**
+     * 释放缓存自己持有的连接、线程和堆外内存（meta 协议连接、批量读取线程、堆外缓存），不关闭 memcached 客户端
+     */
+    public void close() {
+        if (null != metaClient) {
+            metaClient.close();
+        }
+        if (null != getBatcher) {
+            getBatcher.close();
+        }
+        if (null != offHeapCache) {
+            offHeapCache.close();
+        }
+    }
+
+    /**
+     * @return meta 协议客户端，未启用时为null
+     */
+    public MetaClient getMetaClient() {
+        return metaClient;
+    }
+
+    /**
+     * @return 已创建的客户端，还没有创建时返回null，不会触发创建
+     */
+    public MemcachedClient getCreatedClient() {
+        return client;
+    }
+
+    /**
+     * 创建客户端并读取命名空间版本号，可以在启动时提前调用，避免第一次访问时等待连接
+     */
+    public void initialize() {
+        try {
+            getVersion();
+        } catch (TimeoutException | InterruptedException | MemcachedException e) {
+            metrics.error();
+            LOGGER.error(e.getMessage(), e);
+        }
+    }
+
+    public void setClient(MemcachedClient client) {
+        this.client = client;
+    }
+
+    /**
+     * @return 编解码统计
+     */
+    public StatisticsTranscoder getTranscoder() {
+        return transcoder;
+    }
+
+    /**
+     * @return 进程内缓存，未启用时为null
+     */
+    public NearCache getNearCache() {
+        return nearCache;
+    }
+
+    /**
+     * @return 堆外缓存，未启用时为null
+     */
+    public OffHeapCache getOffHeapCache() {
+        return offHeapCache;
+    }
+
+    /**
+     * @return 节点熔断器，未启用时为null
+     */
+    public CircuitBreakers getCircuitBreakers() {
+        return circuitBreakers;
+    }
+
+    /**
+     * @return 当前的热点key和每秒访问次数，未启用热点检测时为空
+     */
+    public Map<String, Long> getHotKeys() {
+        return null == hotKeyDetector ? Collections.emptyMap() : hotKeyDetector.getHotKeys();
+    }
+
+    /**
+     * @return 命中率、延迟等统计
+     */
+    public MemcachedCacheMetrics getMetrics() {
+        return metrics;
     }
 
     /**
      * 把对象转换为String类型的key，
-     * 通过计算对象的MD5
+     * key中携带命名空间版本号，clear后版本号变化，旧的key自然失效；
+     * 过长的key通过 {@link KeyEncoder} 转换为固定长度的hash
      *
      * @param obj key
-     * @return MD5 String
+     * @return memcached key
      */
     private String getKey(Object obj) throws InterruptedException, MemcachedException, TimeoutException {
         if (null == obj)
             return null;
-        String key = this.getName() + "_" + obj.toString();
-        getClient().append(PREFIX + this.getName(), key+SPLIT);
-        return key;
+        return keyEncoder.encode(encodedName, getVersion(), obj);
+    }
+
+    private long getVersion() throws InterruptedException, MemcachedException, TimeoutException {
+        return currentVersion(namespace);
+    }
+
+    /**
+     * 命名空间、标签的当前版本号，所在节点熔断时使用本地缓存的版本号
+     */
+    private long currentVersion(CacheVersion version) throws InterruptedException, MemcachedException, TimeoutException {
+        if (null == circuitBreakers || !version.isStale()) {
+            return version.get(client());
+        }
+        return remote(version.getKey(), opTimeout -> version.get(client(), opTimeout), version.getLocal());
+    }
+
+    /**
+     * cas 冲突后随机等待，避免并发修改的线程反复冲突
+     *
+     * @param attempt 已尝试次数，从0开始
+     */
+    private void backoff(int attempt) {
+        long maxMicros = 1L << Math.min(attempt + 4, 14);
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(ThreadLocalRandom.current().nextLong(maxMicros)));
+    }
+
+    /**
+     * 原子操作不能降级为本地操作，所在节点熔断时直接失败
+     */
+    private void requireAvailable(String cacheKey) throws MemcachedException {
+        if (null != circuitBreakers && !circuitBreakers.isAvailable(cacheKey)) {
+            throw new MemcachedException("memcached节点熔断中: " + cacheKey);
+        }
+    }
+
+    /**
+     * 访问memcached，开启熔断时通过key所在节点的熔断器执行并使用自适应超时
+     *
+     * @param cacheKey memcached key
+     * @param call     参数为超时时间
+     * @param fallback 熔断时的返回值
+     */
+    private <T> T remote(String cacheKey, CircuitBreakers.Call<T> call, T fallback) throws InterruptedException, MemcachedException, TimeoutException {
+        if (null == circuitBreakers) {
+            return call.call(client().getOpTimeout());
+        }
+        return circuitBreakers.execute(cacheKey, call, fallback);
+    }
+
+    /**
+     * 批量读取未解码的数据，开启熔断时跳过熔断中的节点上的key，超时取各节点超时的最大值
+     */
+    private Map<String, CachedData> fetchAll(Collection<String> cacheKeys) throws InterruptedException, MemcachedException, TimeoutException {
+        if (null == circuitBreakers) {
+            return withoutPlaceholders(client().get(cacheKeys, CachedDataTranscoder.INSTANCE));
+        }
+        List<String> allowed = new ArrayList<>(cacheKeys.size());
+        long timeout = 0;
+        for (String cacheKey : cacheKeys) {
+            if (circuitBreakers.allowRequest(cacheKey)) {
+                allowed.add(cacheKey);
+                timeout = Math.max(timeout, circuitBreakers.getTimeout(cacheKey));
+            }
+        }
+        if (allowed.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        long start = System.nanoTime();
+        try {
+            Map<String, CachedData> values = client().get(allowed, timeout, CachedDataTranscoder.INSTANCE);
+            circuitBreakers.record(allowed, System.nanoTime() - start, true);
+            return withoutPlaceholders(values);
+        } catch (TimeoutException | MemcachedException e) {
+            circuitBreakers.record(allowed, 0, false);
+            throw e;
+        }
+    }
+
+    /**
+     * meta 协议下二进制协议读取到的 {@code mg N} 占位值（flag为0、没有内容）视为未命中
+     */
+    private Map<String, CachedData> withoutPlaceholders(Map<String, CachedData> values) {
+        if (null == metaClient || null == values) {
+            return values;
+        }
+        Map<String, CachedData> result = new HashMap<>(values);
+        result.values().removeIf(this::isPlaceholder);
+        return result;
+    }
+
+    /**
+     * 二进制协议读取不到 meta 协议的 W/Z 标志，flag为0且没有内容的值按占位值处理；
+     * 只在开启 meta 协议时判断，{@link CompactTranscoder} 编码的值 flag 都不为0
+     *
+     * @return 是否是 {@code mg N} 创建的占位值
+     */
+    private boolean isPlaceholder(CachedData data) {
+        return null != metaClient && null != data && data.getFlag() == 0 && data.getData().length == 0;
     }
 }
@@ -1,24 +1,53 @@
 package software.sitb.spring.cache.memcached;
 
+import net.rubyeye.xmemcached.MemcachedClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
+import software.sitb.spring.cache.memcached.metrics.CacheMetricsRegistry;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
 /**
  * @author 田尘殇Sean sean.snow@live.com
  */
-public class MemcachedCacheManager implements CacheManager {
+public class MemcachedCacheManager implements CacheManager, SmartInitializingSingleton {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MemcachedCacheManager.class);
+
     private final ConcurrentMap<String, Cache> cacheMap = new ConcurrentHashMap<>(16);
 
     private boolean dynamic = true;
 
     private MemcachedBuilder memcachedBuilder;
 
+    private CacheMetricsRegistry metricsRegistry;
+
+    private volatile CompletableFuture<Void> initialization;
+
+    /**
+     * 按缓存名字单独指定的配置
+     */
+    private final Map<String, MemcachedConfig> cacheConfigs = new ConcurrentHashMap<>(16);
+
+    /**
+     * 按新配置重新创建后被替换的缓存，可能仍被调用方持有，在 {@link #close()} 时才关闭
+     */
+    private final List<MemcachedCache> replacedCaches = new ArrayList<>();
+
     public MemcachedCacheManager(MemcachedBuilder memcachedBuilder) {
         this(memcachedBuilder, null);
     }
@@ -80,12 +109,138 @@ public class MemcachedCacheManager implements CacheManager {
     }
 
     /**
-     * 创建一个缓存对象
+     * 创建一个缓存对象，第一次访问memcached时才创建客户端
      *
      * @param name 缓存名字
      * @return Cache
      */
     private Cache createCache(String name) {
-        return new MemcachedCache(this.memcachedBuilder.builder(), name);
+        return createCache(name, () -> this.memcachedBuilder.getClient(name), replicaFactory(name));
+    }
+
+    /**
+     * @return 创建副本集群客户端，未配置副本集群时为null
+     */
+    private Supplier<MemcachedClient> replicaFactory(String name) {
+        return this.memcachedBuilder.hasReplica() ? () -> this.memcachedBuilder.getReplicaClient(name) : null;
+    }
+
+    private Cache createCache(String name, Supplier<MemcachedClient> client, Supplier<MemcachedClient> replica) {
+        MemcachedConfig config = this.cacheConfigs.getOrDefault(name, this.memcachedBuilder.getConfig());
+        MemcachedCache cache = new MemcachedCache(client, replica, this.memcachedBuilder.getTranscoder(), name, config);
+        if (null != this.metricsRegistry) {
+            this.metricsRegistry.register(cache);
+        }
+        return cache;
+    }
+
+    /**
+     * 按缓存名字单独指定过期时间、进程内缓存等配置，没有指定的缓存使用 {@link MemcachedBuilder} 的配置。
+     * 连接相关的配置始终使用 {@link MemcachedBuilder} 的配置。
+     * <p>
+     * 已创建的同名缓存会按新配置重新创建，继续使用原来的客户端（包括副本集群的客户端）。
+     * 之后 {@link #getCache(String)} 返回新的实例；已经取得旧实例的调用方可以继续使用（仍按原来的配置），
+     * 旧实例不会立即关闭，在 {@link #close()} 时一起关闭
+     *
+     * @param cacheConfigs 缓存名字和配置，可通过 {@link MemcachedConfig#copy()} 在公共配置基础上修改
+     */
+    public void setCacheConfigs(Map<String, MemcachedConfig> cacheConfigs) {
+        this.cacheConfigs.clear();
+        this.cacheConfigs.putAll(cacheConfigs);
+        synchronized (this.cacheMap) {
+            for (String name : cacheConfigs.keySet()) {
+                Cache previous = this.cacheMap.get(name);
+                if (null == previous) {
+                    continue;
+                }
+                if (null != this.metricsRegistry) {
+                    this.metricsRegistry.unregister((MemcachedCache) previous);
+                }
+                MemcachedClient client = ((MemcachedCache) previous).getCreatedClient();
+                MemcachedClient replica = ((MemcachedCache) previous).getCreatedReplicaClient();
+                this.cacheMap.put(name, createCache(name,
+                        null == client ? () -> this.memcachedBuilder.getClient(name) : () -> client,
+                        null == replica ? replicaFactory(name) : () -> replica));
+                this.replacedCaches.add((MemcachedCache) previous);
+            }
+        }
+    }
+
+    /**
+     * 设置缓存统计的发布方式，已创建的缓存会立即发布
+     *
+     * @param metricsRegistry 例如 {@link software.sitb.spring.cache.memcached.metrics.JmxCacheMetricsRegistry}
+     */
+    public void setMetricsRegistry(CacheMetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+        for (Cache cache : this.cacheMap.values()) {
+            metricsRegistry.register((MemcachedCache) cache);
+        }
+    }
+
+    /**
+     * 并行创建已知缓存的客户端并读取命名空间版本号，连接失败只记录日志。
+     * 在Spring容器中会在所有单例创建完成后自动在后台调用，不阻塞启动
+     *
+     * @return 所有缓存初始化完成
+     */
+    public CompletableFuture<Void> initialize() {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(this.cacheMap.size());
+        for (Cache cache : this.cacheMap.values()) {
+            try {
+                futures.add(CompletableFuture.runAsync(((MemcachedCache) cache)::initialize, CacheExecutors.getDefault()));
+            } catch (RejectedExecutionException e) {
+                LOGGER.warn("缓存[{}]初始化任务被拒绝，将在第一次访问时初始化", cache.getName());
+            }
+        }
+        CompletableFuture<Void> future = CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+        this.initialization = future;
+        return future;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        initialize();
+    }
+
+    /**
+     * 关闭所有缓存使用的客户端（包括副本集群的客户端），等待进行中的初始化完成后再关闭
+     */
+    public void close() {
+        CompletableFuture<Void> initialization = this.initialization;
+        if (null != initialization) {
+            initialization.join();
+        }
+        Set<MemcachedClient> clients = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Cache cache : this.cacheMap.values()) {
+            close((MemcachedCache) cache, clients);
+            if (null != this.metricsRegistry) {
+                this.metricsRegistry.unregister((MemcachedCache) cache);
+            }
+        }
+        synchronized (this.cacheMap) {
+            for (MemcachedCache cache : this.replacedCaches) {
+                close(cache, clients);
+            }
+            this.replacedCaches.clear();
+        }
+        for (MemcachedClient client : clients) {
+            this.memcachedBuilder.close(client);
+        }
+    }
+
+    /**
+     * 关闭缓存，收集它使用的客户端，多个缓存共用的客户端只关闭一次
+     */
+    private static void close(MemcachedCache cache, Set<MemcachedClient> clients) {
+        MemcachedClient client = cache.getCreatedClient();
+        if (null != client) {
+            clients.add(client);
+        }
+        MemcachedClient replica = cache.getCreatedReplicaClient();
+        if (null != replica) {
+            clients.add(replica);
+        }
+        cache.close();
     }
 }
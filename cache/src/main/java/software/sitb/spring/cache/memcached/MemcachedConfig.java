@@ -1,5 +1,11 @@
 package software.sitb.spring.cache.memcached;
 
+import net.rubyeye.xmemcached.transcoders.Transcoder;
+import org.springframework.beans.BeanUtils;
+import software.sitb.spring.cache.memcached.codec.KeyEncoder;
+
+import java.util.concurrent.Executor;
+
 /**
  * @author 田尘殇Sean sean.snow@live.com
  */
@@ -19,6 +25,52 @@ public class MemcachedConfig {
      */
     private Integer weights;
 
+    /**
+     * 操作超时，单位毫秒，为空时使用xmemcached的默认值
+     */
+    private Long operationTimeout;
+
+    /**
+     * 是否开启熔断：节点超时或出错的比例过高时暂时跳过该节点，读取视为未命中，写入只更新本地缓存
+     */
+    private Boolean circuitBreaker = false;
+
+    /**
+     * 熔断的失败率阈值，百分比
+     */
+    private Integer breakerFailureRate = 50;
+
+    /**
+     * 10秒内调用次数达到该值才计算失败率
+     */
+    private Integer breakerMinimumCalls = 20;
+
+    /**
+     * 熔断后多久放行一次试探请求，单位毫秒
+     */
+    private Long breakerOpenDuration = 5000L;
+
+    /**
+     * 熔断后后台探测节点是否恢复的间隔，单位毫秒
+     */
+    private Long breakerProbeInterval = 1000L;
+
+    /**
+     * 开启熔断时超时时间根据最近的p99延迟自适应，为p99的倍数，不超过操作超时
+     */
+    private Double adaptiveTimeoutMultiplier = 3.0;
+
+    /**
+     * 自适应超时的下限，单位毫秒
+     */
+    private Long minimumTimeout = 10L;
+
+    /**
+     * 是否使用ketama一致性hash分布key，默认关闭，使用xmemcached默认的取模分布，增删节点会导致几乎所有key失效；
+     * 开启后key的分布与取模不同，已有集群开启时几乎所有key都会重新分布
+     */
+    private Boolean consistentHash = false;
+
     /**
      * 宕机报警
      */
@@ -29,6 +81,175 @@ public class MemcachedConfig {
      */
     private String connectString;
 
+    /**
+     * 所有缓存共用一个客户端，只通过key前缀区分，连接数只按 connectionPoolSize 建立一次
+     */
+    private Boolean sharedClient = false;
+
+    /**
+     * 值的编解码实现，为空时使用 {@link software.sitb.spring.cache.memcached.codec.CompactTranscoder}
+     */
+    private Transcoder<Object> transcoder;
+
+    /**
+     * 编码后超过该字节数的值使用LZ4压缩，为空时不压缩
+     */
+    private Integer compressionThreshold;
+
+    /**
+     * key编码实现，为空时使用 {@link software.sitb.spring.cache.memcached.codec.DefaultKeyEncoder}
+     */
+    private KeyEncoder keyEncoder;
+
+    /**
+     * 写入缓存的默认过期时间，单位秒，0表示不过期
+     */
+    private Integer expiration = 86400;
+
+    /**
+     * 过期时间随机抖动比例，例如0.1表示在过期时间基础上随机增加0~10%，避免大量key同时过期
+     */
+    private Double expirationJitter = 0.0;
+
+    /**
+     * 是否缓存null值，开启后不存在的数据也会缓存，避免每次都查询数据库
+     */
+    private Boolean cacheNullValues = false;
+
+    /**
+     * 是否缓存空集合和空数组
+     */
+    private Boolean cacheEmptyCollections = false;
+
+    /**
+     * null值、空集合的过期时间，单位秒
+     */
+    private Integer nullValueExpiration = 60;
+
+    /**
+     * 缓存命名空间版本号的本地缓存时间，单位毫秒。
+     * 其他节点执行clear后，本节点最多在该时间后感知
+     */
+    private Long namespaceRefreshInterval = 1000L;
+
+    /**
+     * 进程内缓存（L1）最大条目数，为空或0时不启用
+     */
+    private Integer nearCacheMaximumSize;
+
+    /**
+     * 进程内缓存条目最长存活时间，单位秒
+     */
+    private Integer nearCacheExpiration = 60;
+
+    /**
+     * 堆外缓存（L2）容量，单位字节，为空或0时不启用
+     */
+    private Long offHeapCapacity;
+
+    /**
+     * 堆外缓存使用内存映射文件时文件所在目录，每个缓存实例新建一个以缓存名字开头的临时文件，关闭时删除，为空时使用直接内存
+     */
+    private String offHeapDirectory;
+
+    /**
+     * 堆外缓存条目最长存活时间，单位秒
+     */
+    private Integer offHeapExpiration = 300;
+
+    /**
+     * 每秒访问次数达到该值的key视为热点，在本地保存一份短时间的副本，为空或0时不检测
+     */
+    private Integer hotKeyThreshold;
+
+    /**
+     * 最多同时保存的热点key数量
+     */
+    private Integer hotKeyMaximumSize = 64;
+
+    /**
+     * 热点key本地副本的存活时间，单位秒
+     */
+    private Integer hotKeyExpiration = 1;
+
+    /**
+     * get(key, valueLoader) 未命中时跨节点加载锁的过期时间，单位秒，为空或0时不使用分布式锁
+     */
+    private Integer leaseExpiration;
+
+    /**
+     * 未拿到加载锁的节点等待其他节点写入结果的最长时间，单位毫秒，超时后自行加载
+     */
+    private Long leaseWaitTimeout = 500L;
+
+    /**
+     * 是否开启提前刷新：通过 get(key, valueLoader) 加载的值在过期前按概率异步重新加载，期间继续返回旧值
+     */
+    private Boolean refreshAhead = false;
+
+    /**
+     * 提前刷新的积极程度，大于1时更早刷新
+     */
+    private Double refreshAheadBeta = 1.0;
+
+    /**
+     * 是否通过 meta 协议（mg/ms/md）读写和删除，需要 memcached 1.6.10 及以上版本
+     */
+    private Boolean metaProtocol = false;
+
+    /**
+     * meta 协议下 evict 只把值标记为失效，失效后继续存活的时间，单位秒，期间重新加载的同时返回旧值；
+     * 会改变 evict 的语义，需要显式开启，默认为空，与二进制协议一样直接删除
+     */
+    private Integer staleExpiration;
+
+    /**
+     * 是否滑动过期：每次从memcached读取时把过期时间重置为 expiration，读取和续期在同一次往返中完成
+     */
+    private Boolean slidingExpiration = false;
+
+    /**
+     * 合并单key读取的等待时间，单位微秒，为空或0时不合并；第一个请求到达后最多等待这么久，期间到达的读取合并为一次批量读取
+     */
+    private Long batchWindow;
+
+    /**
+     * 合并单key读取时每批最多的key数
+     */
+    private Integer batchSize = 64;
+
+    /**
+     * 编码后超过该字节数的值拆分为多个分块写入，清单写入原来的key，读取时一次批量读取所有分块；
+     * 建议略小于memcached单个值1MB的上限，如 1000 * 1024。默认为空，不拆分
+     */
+    private Integer chunkSize;
+
+    /**
+     * 副本集群的地址，格式与 connectString 相同，为空时不启用；
+     * 启用后写入同时发送到副本集群（noreply），读取主集群超过对冲延迟没有响应时再读取副本集群，先返回的结果生效
+     */
+    private String replicaConnectString;
+
+    /**
+     * 对冲延迟取主集群最近读取延迟的百分位数
+     */
+    private Double hedgeDelayPercentile = 95.0;
+
+    /**
+     * 对冲延迟的下限，单位微秒
+     */
+    private Long hedgeMinimumDelay = 500L;
+
+    /**
+     * 对冲读取占总读取的最大比例，百分比，限制副本集群额外承受的压力
+     */
+    private Integer hedgeBudget = 5;
+
+    /**
+     * 异步刷新等后台任务使用的线程池，为空时使用内置的守护线程池
+     */
+    private Executor executor;
+
     public String getConnectString() {
         return connectString;
     }
@@ -68,4 +289,351 @@ public class MemcachedConfig {
     public void setConnectTimeout(Integer connectTimeout) {
         this.connectTimeout = connectTimeout;
     }
+
+    public Long getNamespaceRefreshInterval() {
+        return namespaceRefreshInterval;
+    }
+
+    public void setNamespaceRefreshInterval(Long namespaceRefreshInterval) {
+        this.namespaceRefreshInterval = namespaceRefreshInterval;
+    }
+
+    public Integer getNearCacheMaximumSize() {
+        return nearCacheMaximumSize;
+    }
+
+    public void setNearCacheMaximumSize(Integer nearCacheMaximumSize) {
+        this.nearCacheMaximumSize = nearCacheMaximumSize;
+    }
+
+    public Integer getNearCacheExpiration() {
+        return nearCacheExpiration;
+    }
+
+    public void setNearCacheExpiration(Integer nearCacheExpiration) {
+        this.nearCacheExpiration = nearCacheExpiration;
+    }
+
+    public Integer getLeaseExpiration() {
+        return leaseExpiration;
+    }
+
+    public void setLeaseExpiration(Integer leaseExpiration) {
+        this.leaseExpiration = leaseExpiration;
+    }
+
+    public Long getLeaseWaitTimeout() {
+        return leaseWaitTimeout;
+    }
+
+    public void setLeaseWaitTimeout(Long leaseWaitTimeout) {
+        this.leaseWaitTimeout = leaseWaitTimeout;
+    }
+
+    public Boolean getSharedClient() {
+        return sharedClient;
+    }
+
+    public void setSharedClient(Boolean sharedClient) {
+        this.sharedClient = sharedClient;
+    }
+
+    public Transcoder<Object> getTranscoder() {
+        return transcoder;
+    }
+
+    public void setTranscoder(Transcoder<Object> transcoder) {
+        this.transcoder = transcoder;
+    }
+
+    public Integer getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public void setCompressionThreshold(Integer compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public KeyEncoder getKeyEncoder() {
+        return keyEncoder;
+    }
+
+    public void setKeyEncoder(KeyEncoder keyEncoder) {
+        this.keyEncoder = keyEncoder;
+    }
+
+    public Boolean getRefreshAhead() {
+        return refreshAhead;
+    }
+
+    public void setRefreshAhead(Boolean refreshAhead) {
+        this.refreshAhead = refreshAhead;
+    }
+
+    public Double getRefreshAheadBeta() {
+        return refreshAheadBeta;
+    }
+
+    public void setRefreshAheadBeta(Double refreshAheadBeta) {
+        this.refreshAheadBeta = refreshAheadBeta;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public Integer getExpiration() {
+        return expiration;
+    }
+
+    public void setExpiration(Integer expiration) {
+        this.expiration = expiration;
+    }
+
+    public Double getExpirationJitter() {
+        return expirationJitter;
+    }
+
+    public void setExpirationJitter(Double expirationJitter) {
+        this.expirationJitter = expirationJitter;
+    }
+
+    /**
+     * 复制一份配置，用于在公共配置基础上为单个缓存修改部分配置
+     *
+     * @return 新的配置对象
+     */
+    public MemcachedConfig copy() {
+        MemcachedConfig config = new MemcachedConfig();
+        BeanUtils.copyProperties(this, config);
+        return config;
+    }
+
+    public Boolean getConsistentHash() {
+        return consistentHash;
+    }
+
+    public void setConsistentHash(Boolean consistentHash) {
+        this.consistentHash = consistentHash;
+    }
+
+    public Integer getHotKeyThreshold() {
+        return hotKeyThreshold;
+    }
+
+    public void setHotKeyThreshold(Integer hotKeyThreshold) {
+        this.hotKeyThreshold = hotKeyThreshold;
+    }
+
+    public Integer getHotKeyMaximumSize() {
+        return hotKeyMaximumSize;
+    }
+
+    public void setHotKeyMaximumSize(Integer hotKeyMaximumSize) {
+        this.hotKeyMaximumSize = hotKeyMaximumSize;
+    }
+
+    public Integer getHotKeyExpiration() {
+        return hotKeyExpiration;
+    }
+
+    public void setHotKeyExpiration(Integer hotKeyExpiration) {
+        this.hotKeyExpiration = hotKeyExpiration;
+    }
+
+    public Boolean getCacheNullValues() {
+        return cacheNullValues;
+    }
+
+    public void setCacheNullValues(Boolean cacheNullValues) {
+        this.cacheNullValues = cacheNullValues;
+    }
+
+    public Boolean getCacheEmptyCollections() {
+        return cacheEmptyCollections;
+    }
+
+    public void setCacheEmptyCollections(Boolean cacheEmptyCollections) {
+        this.cacheEmptyCollections = cacheEmptyCollections;
+    }
+
+    public Integer getNullValueExpiration() {
+        return nullValueExpiration;
+    }
+
+    public void setNullValueExpiration(Integer nullValueExpiration) {
+        this.nullValueExpiration = nullValueExpiration;
+    }
+
+    public Long getOffHeapCapacity() {
+        return offHeapCapacity;
+    }
+
+    public void setOffHeapCapacity(Long offHeapCapacity) {
+        this.offHeapCapacity = offHeapCapacity;
+    }
+
+    public String getOffHeapDirectory() {
+        return offHeapDirectory;
+    }
+
+    public void setOffHeapDirectory(String offHeapDirectory) {
+        this.offHeapDirectory = offHeapDirectory;
+    }
+
+    public Integer getOffHeapExpiration() {
+        return offHeapExpiration;
+    }
+
+    public void setOffHeapExpiration(Integer offHeapExpiration) {
+        this.offHeapExpiration = offHeapExpiration;
+    }
+
+    public Long getOperationTimeout() {
+        return operationTimeout;
+    }
+
+    public void setOperationTimeout(Long operationTimeout) {
+        this.operationTimeout = operationTimeout;
+    }
+
+    public Boolean getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public void setCircuitBreaker(Boolean circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public Integer getBreakerFailureRate() {
+        return breakerFailureRate;
+    }
+
+    public void setBreakerFailureRate(Integer breakerFailureRate) {
+        this.breakerFailureRate = breakerFailureRate;
+    }
+
+    public Integer getBreakerMinimumCalls() {
+        return breakerMinimumCalls;
+    }
+
+    public void setBreakerMinimumCalls(Integer breakerMinimumCalls) {
+        this.breakerMinimumCalls = breakerMinimumCalls;
+    }
+
+    public Long getBreakerOpenDuration() {
+        return breakerOpenDuration;
+    }
+
+    public void setBreakerOpenDuration(Long breakerOpenDuration) {
+        this.breakerOpenDuration = breakerOpenDuration;
+    }
+
+    public Long getBreakerProbeInterval() {
+        return breakerProbeInterval;
+    }
+
+    public void setBreakerProbeInterval(Long breakerProbeInterval) {
+        this.breakerProbeInterval = breakerProbeInterval;
+    }
+
+    public Double getAdaptiveTimeoutMultiplier() {
+        return adaptiveTimeoutMultiplier;
+    }
+
+    public void setAdaptiveTimeoutMultiplier(Double adaptiveTimeoutMultiplier) {
+        this.adaptiveTimeoutMultiplier = adaptiveTimeoutMultiplier;
+    }
+
+    public Long getMinimumTimeout() {
+        return minimumTimeout;
+    }
+
+    public void setMinimumTimeout(Long minimumTimeout) {
+        this.minimumTimeout = minimumTimeout;
+    }
+
+    public Boolean getMetaProtocol() {
+        return metaProtocol;
+    }
+
+    public void setMetaProtocol(Boolean metaProtocol) {
+        this.metaProtocol = metaProtocol;
+    }
+
+    public Integer getStaleExpiration() {
+        return staleExpiration;
+    }
+
+    public void setStaleExpiration(Integer staleExpiration) {
+        this.staleExpiration = staleExpiration;
+    }
+
+    public Long getBatchWindow() {
+        return batchWindow;
+    }
+
+    public void setBatchWindow(Long batchWindow) {
+        this.batchWindow = batchWindow;
+    }
+
+    public Integer getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(Integer batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public Boolean getSlidingExpiration() {
+        return slidingExpiration;
+    }
+
+    public void setSlidingExpiration(Boolean slidingExpiration) {
+        this.slidingExpiration = slidingExpiration;
+    }
+
+    public String getReplicaConnectString() {
+        return replicaConnectString;
+    }
+
+    public void setReplicaConnectString(String replicaConnectString) {
+        this.replicaConnectString = replicaConnectString;
+    }
+
+    public Double getHedgeDelayPercentile() {
+        return hedgeDelayPercentile;
+    }
+
+    public void setHedgeDelayPercentile(Double hedgeDelayPercentile) {
+        this.hedgeDelayPercentile = hedgeDelayPercentile;
+    }
+
+    public Long getHedgeMinimumDelay() {
+        return hedgeMinimumDelay;
+    }
+
+    public void setHedgeMinimumDelay(Long hedgeMinimumDelay) {
+        this.hedgeMinimumDelay = hedgeMinimumDelay;
+    }
+
+    public Integer getHedgeBudget() {
+        return hedgeBudget;
+    }
+
+    public void setHedgeBudget(Integer hedgeBudget) {
+        this.hedgeBudget = hedgeBudget;
+    }
+
+    public Integer getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(Integer chunkSize) {
+        this.chunkSize = chunkSize;
+    }
 }
@@ -0,0 +1,310 @@
+package software.sitb.spring.cache.memcached;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * MemcachedCache 前置的进程内缓存（L1）。
+ * <p>
+ * 容量有上限，满了之后按TinyLFU准入：新key的访问频率高于LRU淘汰候选者时才替换，
+ * 避免一次性扫描的key冲掉热点数据。每个条目的存活时间不超过配置的上限，
+ * 其他节点的写入最多在该时间后可见。
+ * <p>
+ * 读取不加锁：条目保存在 ConcurrentHashMap 中，访问记录写入按线程分条的有损缓冲区，
+ * 缓冲区满了或写入时由抢到锁的线程批量更新LRU顺序和访问频率；抢不到锁且缓冲区已满时丢弃访问记录，
+ * LRU顺序和频率是采样的近似值。
+ * <p>
+ * 返回的是缓存对象本身，调用方不应修改。
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+public class NearCache {
+
+    private static final int SEGMENT_COUNT = 16;
+
+    private static final int EXPIRE_SCAN_LIMIT = 8;
+
+    /**
+     * 读取缓冲区的分条数和每条的容量
+     */
+    private static final int READ_BUFFER_STRIPES = 8;
+
+    private static final int READ_BUFFER_STRIPE_SIZE = 16;
+
+    private final Segment[] segments;
+
+    private final int segmentMask;
+
+    private final long maxExpireNanos;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * @param maximumSize 最大条目数
+     * @param expiration  条目最长存活时间，单位秒
+     */
+    public NearCache(int maximumSize, int expiration) {
+        int segmentCount = maximumSize < SEGMENT_COUNT * 16 ? 1 : SEGMENT_COUNT;
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(Math.max(1, maximumSize / segmentCount));
+        }
+        this.segmentMask = segmentCount - 1;
+        this.maxExpireNanos = TimeUnit.SECONDS.toNanos(expiration);
+    }
+
+    /**
+     * 获取缓存的值
+     *
+     * @param key memcached key
+     * @return 缓存的值，没有或已过期返回null
+     */
+    public Object get(String key) {
+        int hash = FrequencySketch.spread(key);
+        Object value = segmentFor(hash).get(key, System.nanoTime());
+        if (null == value) {
+            missCount.increment();
+        } else {
+            hitCount.increment();
+        }
+        return value;
+    }
+
+    /**
+     * 写入缓存
+     *
+     * @param key        memcached key
+     * @param value      值
+     * @param expiration memcached中的过期时间，单位秒，0表示不过期
+     */
+    public void put(String key, Object value, int expiration) {
+        long expireNanos = maxExpireNanos;
+        if (expiration > 0) {
+            expireNanos = Math.min(expireNanos, TimeUnit.SECONDS.toNanos(expiration));
+        }
+        int hash = FrequencySketch.spread(key);
+        segmentFor(hash).put(key, hash, value, System.nanoTime() + expireNanos);
+    }
+
+    /**
+     * 删除缓存
+     *
+     * @param key memcached key
+     */
+    public void invalidate(String key) {
+        segmentFor(FrequencySketch.spread(key)).remove(key);
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments[(hash >>> 24) & segmentMask];
+    }
+
+    private static class Entry {
+        private final Object value;
+        private final long expireAt;
+
+        private Entry(Object value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+
+    /**
+     * data 是读取使用的条目，order 是LRU顺序（访问顺序），两者只在持有 lock 时修改，
+     * 读取时发现过期的条目只从 data 中删除，order 中剩下的过期条目在淘汰时清理
+     */
+    private class Segment {
+
+        private final int maximumSize;
+
+        private final FrequencySketch sketch;
+
+        private final ConcurrentHashMap<String, Entry> data;
+
+        private final LinkedHashMap<String, Entry> order;
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * 读取过的key，按线程分条
+         */
+        private final AtomicReferenceArray<String> readBuffer = new AtomicReferenceArray<>(READ_BUFFER_STRIPES * READ_BUFFER_STRIPE_SIZE);
+
+        /**
+         * 每条已写入的数量，超过容量后的记录被丢弃
+         */
+        private final AtomicIntegerArray readCounts = new AtomicIntegerArray(READ_BUFFER_STRIPES);
+
+        private Segment(int maximumSize) {
+            this.maximumSize = maximumSize;
+            this.sketch = new FrequencySketch(maximumSize);
+            this.data = new ConcurrentHashMap<>(Math.min(maximumSize, 1024));
+            this.order = new LinkedHashMap<>(16, 0.75f, true);
+        }
+
+        private Object get(String key, long now) {
+            afterRead(key);
+            Entry entry = data.get(key);
+            if (null == entry) {
+                return null;
+            }
+            if (entry.expireAt - now <= 0) {
+                data.remove(key, entry);
+                return null;
+            }
+            return entry.value;
+        }
+
+        /**
+         * 记录一次读取，所在的条满了时尝试回放缓冲区
+         */
+        private void afterRead(String key) {
+            int stripe = (int) Thread.currentThread().getId() & (READ_BUFFER_STRIPES - 1);
+            int count = readCounts.getAndIncrement(stripe);
+            if (count < READ_BUFFER_STRIPE_SIZE) {
+                readBuffer.lazySet(stripe * READ_BUFFER_STRIPE_SIZE + count, key);
+                return;
+            }
+            if (lock.tryLock()) {
+                try {
+                    drainReads();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        /**
+         * 把缓冲区中的读取记录到访问频率和LRU顺序中，需要持有 lock
+         */
+        private void drainReads() {
+            for (int stripe = 0; stripe < READ_BUFFER_STRIPES; stripe++) {
+                int count = Math.min(readCounts.get(stripe), READ_BUFFER_STRIPE_SIZE);
+                for (int i = 0; i < count; i++) {
+                    int index = stripe * READ_BUFFER_STRIPE_SIZE + i;
+                    String key = readBuffer.get(index);
+                    if (null != key) {
+                        readBuffer.lazySet(index, null);
+                        sketch.increment(FrequencySketch.spread(key));
+                        order.get(key);
+                    }
+                }
+                readCounts.set(stripe, 0);
+            }
+        }
+
+        private void put(String key, int hash, Object value, long expireAt) {
+            Entry entry = new Entry(value, expireAt);
+            lock.lock();
+            try {
+                drainReads();
+                if (order.containsKey(key) || order.size() < maximumSize
+                        || evictExpired(System.nanoTime()) || admit(hash)) {
+                    order.put(key, entry);
+                    data.put(key, entry);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 淘汰LRU队尾附近已过期的条目
+         *
+         * @return 是否腾出了空间
+         */
+        private boolean evictExpired(long now) {
+            boolean evicted = false;
+            Iterator<Map.Entry<String, Entry>> iterator = order.entrySet().iterator();
+            for (int i = 0; i < EXPIRE_SCAN_LIMIT && iterator.hasNext(); i++) {
+                Map.Entry<String, Entry> next = iterator.next();
+                if (next.getValue().expireAt - now <= 0) {
+                    iterator.remove();
+                    data.remove(next.getKey(), next.getValue());
+                    evictionCount.increment();
+                    evicted = true;
+                }
+            }
+            return evicted;
+        }
+
+        /**
+         * TinyLFU 准入：候选key比LRU队尾更常被访问时淘汰队尾
+         */
+        private boolean admit(int candidateHash) {
+            Iterator<Map.Entry<String, Entry>> iterator = order.entrySet().iterator();
+            Map.Entry<String, Entry> victim = iterator.next();
+            if (sketch.frequency(candidateHash) <= sketch.frequency(FrequencySketch.spread(victim.getKey()))) {
+                return false;
+            }
+            iterator.remove();
+            data.remove(victim.getKey(), victim.getValue());
+            evictionCount.increment();
+            return true;
+        }
+
+        private void remove(String key) {
+            lock.lock();
+            try {
+                order.remove(key);
+                data.remove(key);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void clear() {
+            lock.lock();
+            try {
+                order.clear();
+                data.clear();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private int size() {
+            return data.size();
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package software.sitb.spring.cache.memcached;
+
+import net.rubyeye.xmemcached.transcoders.CachedData;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 堆外缓存（L2），位于进程内缓存和memcached之间。
+ * <p>
+ * 保存编码后的字节，存放在直接内存或内存映射文件中，不占用堆，不增加GC压力。
+ * 按key的hash分段，每段是一个环形日志：新条目追加写在写指针处，空间不足时从最旧的条目开始淘汰（FIFO），
+ * 堆上只保存key到偏移量的索引。内存映射文件不用于重启后恢复数据：每个实例使用自己新建的临时文件，
+ * 不会截断其他进程或其他实例正在映射的文件，{@link #close()} 或进程退出时删除。
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+public class OffHeapCache {
+
+    private static final int SEGMENT_COUNT = 16;
+
+    /**
+     * 条目头：总长度、key长度、flag、过期时间
+     */
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 8;
+
+    private final Segment[] segments;
+
+    private final long maxExpireMillis;
+
+    private final Path file;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * 使用直接内存
+     *
+     * @param capacity   总字节数
+     * @param expiration 条目最长存活时间，单位秒
+     */
+    public OffHeapCache(long capacity, int expiration) {
+        this(capacity, expiration, null);
+    }
+
+    /**
+     * @param capacity   总字节数
+     * @param expiration 条目最长存活时间，单位秒
+     * @param file       内存映射文件，为null时使用直接内存；文件只能由当前实例使用，不会被截断，关闭时删除
+     */
+    public OffHeapCache(long capacity, int expiration, Path file) {
+        int segmentSize = (int) Math.min(Integer.MAX_VALUE, Math.max(HEADER_SIZE * 16, capacity / SEGMENT_COUNT));
+        this.segments = new Segment[SEGMENT_COUNT];
+        this.maxExpireMillis = TimeUnit.SECONDS.toMillis(expiration);
+        this.file = file;
+        if (null == file) {
+            for (int i = 0; i < SEGMENT_COUNT; i++) {
+                segments[i] = new Segment(ByteBuffer.allocateDirect(segmentSize));
+            }
+            return;
+        }
+        file.toFile().deleteOnExit();
+        // 索引为空时不会读取文件中已有的内容，不需要截断
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            for (int i = 0; i < SEGMENT_COUNT; i++) {
+                segments[i] = new Segment(channel.map(FileChannel.MapMode.READ_WRITE, (long) i * segmentSize, segmentSize));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("创建内存映射文件失败: " + file, e);
+        }
+    }
+
+    /**
+     * 在目录中为缓存创建唯一的内存映射文件，文件名以缓存名字开头
+     *
+     * @param directory 目录，为null时使用直接内存
+     * @param name      缓存名字
+     * @param capacity  总字节数
+     * @param expiration 条目最长存活时间，单位秒
+     * @return OffHeapCache
+     */
+    public static OffHeapCache create(String directory, String name, long capacity, int expiration) {
+        if (null == directory) {
+            return new OffHeapCache(capacity, expiration);
+        }
+        try {
+            Path dir = Files.createDirectories(Paths.get(directory));
+            Path file = Files.createTempFile(dir, name.replaceAll("[^A-Za-z0-9._-]", "_") + "-", ".cache");
+            return new OffHeapCache(capacity, expiration, file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("创建内存映射文件失败: " + directory, e);
+        }
+    }
+
+    /**
+     * @param key memcached key
+     * @return 编码后的值，没有或已过期返回null
+     */
+    public CachedData get(String key) {
+        CachedData data = segmentFor(key).get(key, System.currentTimeMillis());
+        if (null == data) {
+            missCount.increment();
+        } else {
+            hitCount.increment();
+        }
+        return data;
+    }
+
+    /**
+     * 写入缓存，超过单段容量的值不写入
+     *
+     * @param key        memcached key
+     * @param data       编码后的值
+     * @param expiration memcached中的过期时间，单位秒，0表示不过期
+     */
+    public void put(String key, CachedData data, int expiration) {
+        long expireMillis = maxExpireMillis;
+        if (expiration > 0) {
+            expireMillis = Math.min(expireMillis, TimeUnit.SECONDS.toMillis(expiration));
+        }
+        segmentFor(key).put(key, data, System.currentTimeMillis() + expireMillis);
+    }
+
+    public void invalidate(String key) {
+        segmentFor(key).remove(key);
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * 释放直接内存或内存映射，删除内存映射文件；关闭后读取都未命中，写入被忽略。
+     * 映射在缓冲区被回收时才真正解除，已删除的文件在此之前仍然占用磁盘空间
+     */
+    public void close() {
+        for (Segment segment : segments) {
+            segment.close();
+        }
+        if (null != file) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException("删除内存映射文件失败: " + file, e);
+            }
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return 已使用的字节数，包括已删除但还未被覆盖的条目
+     */
+    public long getUsedBytes() {
+        long used = 0;
+        for (Segment segment : segments) {
+            used += segment.used();
+        }
+        return used;
+    }
+
+    private Segment segmentFor(String key) {
+        return segments[(FrequencySketch.spread(key) >>> 24) & (SEGMENT_COUNT - 1)];
+    }
+
+    /**
+     * 环形日志，条目按写入顺序排列在 tail 到 head 之间，写到末尾放不下时从0重新开始，
+     * wrap 记录上一轮数据的结束位置
+     */
+    private class Segment {
+
+        /**
+         * 关闭后为null
+         */
+        private ByteBuffer buffer;
+
+        private final int capacity;
+
+        private final Map<String, Integer> index = new HashMap<>();
+
+        private int head;
+
+        private int tail;
+
+        private int wrap = -1;
+
+        private int used;
+
+        private Segment(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.capacity = buffer.capacity();
+        }
+
+        private synchronized CachedData get(String key, long now) {
+            Integer offset = index.get(key);
+            if (null == offset) {
+                return null;
+            }
+            if (buffer.getLong(offset + 12) - now <= 0) {
+                index.remove(key);
+                return null;
+            }
+            int length = buffer.getInt(offset);
+            int keyLength = buffer.getInt(offset + 4);
+            int flag = buffer.getInt(offset + 8);
+            byte[] data = new byte[length - HEADER_SIZE - keyLength];
+            ByteBuffer view = buffer.duplicate();
+            view.position(offset + HEADER_SIZE + keyLength);
+            view.get(data);
+            return new CachedData(flag, data, data.length, -1);
+        }
+
+        private synchronized void put(String key, CachedData data, long expireAt) {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            int length = HEADER_SIZE + keyBytes.length + data.getData().length;
+            index.remove(key);
+            if (length > capacity || null == buffer) {
+                return;
+            }
+            int offset = allocate(length);
+            ByteBuffer view = buffer.duplicate();
+            view.position(offset);
+            view.putInt(length).putInt(keyBytes.length).putInt(data.getFlag()).putLong(expireAt);
+            view.put(keyBytes).put(data.getData());
+            index.put(key, offset);
+        }
+
+        /**
+         * 在写指针处分配空间，不够时淘汰最旧的条目
+         */
+        private int allocate(int length) {
+            while (true) {
+                if (used == 0) {
+                    head = tail = 0;
+                    wrap = -1;
+                }
+                if (wrap < 0) {
+                    // 数据在 [tail, head)
+                    if (capacity - head >= length) {
+                        break;
+                    }
+                    wrap = head;
+                    head = 0;
+                    if (tail == wrap) {
+                        tail = 0;
+                        wrap = -1;
+                    }
+                    continue;
+                }
+                // 数据在 [tail, wrap) 和 [0, head)
+                if (tail - head >= length) {
+                    break;
+                }
+                evictTail();
+            }
+            int offset = head;
+            head += length;
+            used += length;
+            return offset;
+        }
+
+        private void evictTail() {
+            int length = buffer.getInt(tail);
+            int keyLength = buffer.getInt(tail + 4);
+            byte[] keyBytes = new byte[keyLength];
+            ByteBuffer view = buffer.duplicate();
+            view.position(tail + HEADER_SIZE);
+            view.get(keyBytes);
+            String key = new String(keyBytes, StandardCharsets.UTF_8);
+            Integer offset = index.get(key);
+            if (null != offset && offset == tail) {
+                index.remove(key);
+                evictionCount.increment();
+            }
+            tail += length;
+            used -= length;
+            if (tail == wrap) {
+                tail = 0;
+                wrap = -1;
+            }
+        }
+
+        private synchronized void remove(String key) {
+            index.remove(key);
+        }
+
+        private synchronized void clear() {
+            index.clear();
+            head = tail = used = 0;
+            wrap = -1;
+        }
+
+        private synchronized void close() {
+            clear();
+            buffer = null;
+        }
+
+        private synchronized int size() {
+            return index.size();
+        }
+
+        private synchronized int used() {
+            return used;
+        }
+    }
+}
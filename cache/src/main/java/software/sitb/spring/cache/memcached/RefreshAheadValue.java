@@ -0,0 +1,76 @@
+package software.sitb.spring.cache.memcached;
+
+import java.io.Serializable;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 开启提前刷新时写入缓存的值，附带写入时间和加载耗时。
+ * <p>
+ * 按 XFetch 算法判断是否提前刷新：{@code now - delta * beta * ln(random) >= expiry}，
+ * 加载越慢、越接近过期，提前刷新的概率越大。
+ * <p>
+ * {@link software.sitb.spring.cache.memcached.codec.CompactTranscoder} 以固定的二进制头编码，不经过 Serializer；
+ * 通过 {@link MemcachedConfig#setTranscoder} 换成 xmemcached 的 SerializingTranscoder 时，
+ * 写入时间、加载耗时连同原值整体以Java序列化写入，因此实现 Serializable。
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+public class RefreshAheadValue implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Object value;
+
+    /**
+     * 写入时间，单位毫秒
+     */
+    private final long writeTime;
+
+    /**
+     * 加载耗时，单位毫秒
+     */
+    private final long delta;
+
+    /**
+     * 过期时间，单位秒，0表示不过期
+     */
+    private final int expiration;
+
+    public RefreshAheadValue(Object value, long writeTime, long delta, int expiration) {
+        this.value = value;
+        this.writeTime = writeTime;
+        this.delta = delta;
+        this.expiration = expiration;
+    }
+
+    /**
+     * 是否需要提前刷新
+     *
+     * @param beta 大于1时更积极地提前刷新，小于1时更保守
+     * @return true 需要刷新
+     */
+    public boolean shouldRefresh(double beta) {
+        if (expiration <= 0 || delta <= 0) {
+            return false;
+        }
+        long expiry = writeTime + expiration * 1000L;
+        double random = 1.0 - ThreadLocalRandom.current().nextDouble();
+        return System.currentTimeMillis() - delta * beta * Math.log(random) >= expiry;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    public long getWriteTime() {
+        return writeTime;
+    }
+
+    public long getDelta() {
+        return delta;
+    }
+
+    public int getExpiration() {
+        return expiration;
+    }
+}
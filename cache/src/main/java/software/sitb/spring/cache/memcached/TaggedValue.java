@@ -0,0 +1,47 @@
+package software.sitb.spring.cache.memcached;
+
+import java.io.Serializable;
+
+/**
+ * 带标签写入缓存的值，附带写入时每个标签的版本号。
+ * <p>
+ * 读取时标签的当前版本号与写入时不同，说明该标签已被清除，值视为不存在。
+ * <p>
+ * {@link software.sitb.spring.cache.memcached.codec.CompactTranscoder} 把标签和版本号编码为二进制头，不经过 Serializer；
+ * 其他编码实现只能看到这个对象本身，标签名和版本号数组需要随值一起以Java序列化写入。
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+public class TaggedValue implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Object value;
+
+    private final String[] tags;
+
+    private final long[] versions;
+
+    /**
+     * @param value    值
+     * @param tags     标签
+     * @param versions 写入时每个标签的版本号，与 tags 一一对应
+     */
+    public TaggedValue(Object value, String[] tags, long[] versions) {
+        this.value = value;
+        this.tags = tags;
+        this.versions = versions;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    public String[] getTags() {
+        return tags;
+    }
+
+    public long[] getVersions() {
+        return versions;
+    }
+}
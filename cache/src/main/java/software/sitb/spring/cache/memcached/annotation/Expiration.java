@@ -0,0 +1,31 @@
+package software.sitb.spring.cache.memcached.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 指定方法（或类中所有方法）通过 Spring Cache 写入缓存时的过期时间，覆盖缓存配置的过期时间。
+ * <p>
+ * 需要注册 {@link ExpirationAdvisor}。
+ *
+ * <pre>
+ * &#64;Cacheable("user")
+ * &#64;Expiration(600)
+ * public User findOne(Long id)
+ * </pre>
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Expiration {
+
+    /**
+     * @return 过期时间，单位秒
+     */
+    int value();
+}
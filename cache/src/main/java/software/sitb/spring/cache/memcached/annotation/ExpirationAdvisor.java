@@ -0,0 +1,48 @@
+package software.sitb.spring.cache.memcached.annotation;
+
+import org.aopalliance.aop.Advice;
+import org.springframework.aop.Pointcut;
+import org.springframework.aop.support.AbstractPointcutAdvisor;
+import org.springframework.aop.support.ComposablePointcut;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.core.Ordered;
+
+/**
+ * 拦截标注了 {@link Expiration} 的方法和类。
+ * <p>
+ * 优先级最高，保证在缓存拦截器外层执行。只开启 {@code @EnableCaching} 时，
+ * 需要以 {@code @Role(BeanDefinition.ROLE_INFRASTRUCTURE)} 注册才会生效：
+ *
+ * <pre>
+ * &#64;Bean
+ * &#64;Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+ * public static ExpirationAdvisor expirationAdvisor() {
+ *     return new ExpirationAdvisor();
+ * }
+ * </pre>
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+public class ExpirationAdvisor extends AbstractPointcutAdvisor {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient Pointcut pointcut = new ComposablePointcut(new AnnotationMatchingPointcut(Expiration.class, true))
+            .union(AnnotationMatchingPointcut.forMethodAnnotation(Expiration.class));
+
+    private final transient Advice advice = new ExpirationInterceptor();
+
+    public ExpirationAdvisor() {
+        setOrder(Ordered.HIGHEST_PRECEDENCE);
+    }
+
+    @Override
+    public Pointcut getPointcut() {
+        return pointcut;
+    }
+
+    @Override
+    public Advice getAdvice() {
+        return advice;
+    }
+}
@@ -0,0 +1,37 @@
+package software.sitb.spring.cache.memcached.annotation;
+
+/**
+ * 保存当前线程正在执行的方法上 {@link Expiration} 指定的过期时间
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+public final class ExpirationContext {
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private ExpirationContext() {
+    }
+
+    /**
+     * @return 当前方法指定的过期时间，没有指定时返回null
+     */
+    public static Integer current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 设置当前线程的过期时间
+     *
+     * @param expiration 过期时间，null表示清除
+     * @return 之前的过期时间，用于恢复
+     */
+    static Integer set(Integer expiration) {
+        Integer previous = CURRENT.get();
+        if (null == expiration) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(expiration);
+        }
+        return previous;
+    }
+}
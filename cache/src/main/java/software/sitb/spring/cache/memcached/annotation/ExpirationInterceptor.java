@@ -0,0 +1,41 @@
+package software.sitb.spring.cache.memcached.annotation;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+
+import java.lang.reflect.Method;
+
+/**
+ * 在方法执行期间设置 {@link ExpirationContext}，缓存拦截器写入缓存时读取
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+public class ExpirationInterceptor implements MethodInterceptor {
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Expiration expiration = findExpiration(invocation);
+        if (null == expiration) {
+            return invocation.proceed();
+        }
+        Integer previous = ExpirationContext.set(expiration.value());
+        try {
+            return invocation.proceed();
+        } finally {
+            ExpirationContext.set(previous);
+        }
+    }
+
+    private Expiration findExpiration(MethodInvocation invocation) {
+        Object target = invocation.getThis();
+        Class<?> targetClass = null == target ? invocation.getMethod().getDeclaringClass() : AopUtils.getTargetClass(target);
+        Method method = AopUtils.getMostSpecificMethod(invocation.getMethod(), targetClass);
+        Expiration expiration = AnnotatedElementUtils.findMergedAnnotation(method, Expiration.class);
+        if (null == expiration) {
+            expiration = AnnotatedElementUtils.findMergedAnnotation(targetClass, Expiration.class);
+        }
+        return expiration;
+    }
+}
@@ -0,0 +1,54 @@
+package software.sitb.spring.cache.memcached.codec;
+
+import net.rubyeye.xmemcached.transcoders.CachedData;
+import net.rubyeye.xmemcached.transcoders.CompressionMode;
+import net.rubyeye.xmemcached.transcoders.Transcoder;
+
+/**
+ * 不做任何转换的 Transcoder，写入已经编码好的数据，读取时返回原始的 flag 和字节
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+public final class CachedDataTranscoder implements Transcoder<CachedData> {
+
+    public static final CachedDataTranscoder INSTANCE = new CachedDataTranscoder();
+
+    private CachedDataTranscoder() {
+    }
+
+    @Override
+    public CachedData encode(CachedData o) {
+        return o;
+    }
+
+    @Override
+    public CachedData decode(CachedData d) {
+        return d;
+    }
+
+    @Override
+    public void setPrimitiveAsString(boolean primitiveAsString) {
+    }
+
+    @Override
+    public void setPackZeros(boolean packZeros) {
+    }
+
+    @Override
+    public void setCompressionThreshold(int to) {
+    }
+
+    @Override
+    public boolean isPrimitiveAsString() {
+        return false;
+    }
+
+    @Override
+    public boolean isPackZeros() {
+        return false;
+    }
+
+    @Override
+    public void setCompressionMode(CompressionMode compressMode) {
+    }
+}
@@ -0,0 +1,374 @@
+package software.sitb.spring.cache.memcached.codec;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import net.rubyeye.xmemcached.transcoders.CachedData;
+import net.rubyeye.xmemcached.transcoders.CompressionMode;
+import net.rubyeye.xmemcached.transcoders.SerializingTranscoder;
+import net.rubyeye.xmemcached.transcoders.Transcoder;
+import org.springframework.cache.support.NullValue;
+import org.springframework.core.serializer.DefaultDeserializer;
+import org.springframework.core.serializer.DefaultSerializer;
+import org.springframework.core.serializer.Deserializer;
+import org.springframework.core.serializer.Serializer;
+import software.sitb.spring.cache.memcached.ChunkedValue;
+import software.sitb.spring.cache.memcached.RefreshAheadValue;
+import software.sitb.spring.cache.memcached.TaggedValue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 紧凑的二进制编码。
+ * <p>
+ * String、基本类型包装类和byte[]直接写入字节，通过flag记录类型，缓存的null（{@link NullValue}）只占用flag；其他对象交给 {@link Serializer} 处理，
+ * 默认使用Java序列化，可替换为更快的实现。超过压缩阈值的数据使用LZ4压缩，需要引入 lz4-java。
+ * <p>
+ * 缓存内部的包装值（{@link RefreshAheadValue}、{@link TaggedValue}）不经过 {@link Serializer}：固定的二进制头之后是被包装的值的flag和数据，
+ * 被包装的值按同样的规则编码；分块清单（{@link ChunkedValue}）只有固定的二进制头。
+ * 因此 {@link Serializer} 可以替换为JSON等只处理业务对象的实现。
+ * <p>
+ * 不是本编码写入的数据（flag 高8位不匹配）交给 xmemcached 默认的 {@link SerializingTranscoder} 解码。
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+public class CompactTranscoder implements Transcoder<Object> {
+
+    public static final int FLAG_MAGIC = 0x5C000000;
+
+    public static final int FLAG_MAGIC_MASK = 0xFF000000;
+
+    public static final int FLAG_COMPRESSED = 0x00010000;
+
+    public static final int FLAG_TYPE_MASK = 0x000000FF;
+
+    public static final int TYPE_OBJECT = 0;
+    public static final int TYPE_STRING = 1;
+    public static final int TYPE_BYTES = 2;
+    public static final int TYPE_INTEGER = 3;
+    public static final int TYPE_LONG = 4;
+    public static final int TYPE_BOOLEAN = 5;
+    public static final int TYPE_DOUBLE = 6;
+    public static final int TYPE_FLOAT = 7;
+    public static final int TYPE_SHORT = 8;
+    public static final int TYPE_BYTE = 9;
+    public static final int TYPE_CHARACTER = 10;
+    public static final int TYPE_NULL = 11;
+    public static final int TYPE_REFRESH_AHEAD = 12;
+    public static final int TYPE_TAGGED = 13;
+    public static final int TYPE_CHUNKED = 14;
+
+    /**
+     * 包装值中被包装的值的flag长度
+     */
+    private static final int INNER_FLAG_SIZE = 4;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final Serializer<Object> serializer;
+
+    private final Deserializer<Object> deserializer;
+
+    private final SerializingTranscoder legacy = new SerializingTranscoder();
+
+    private volatile int compressionThreshold = Integer.MAX_VALUE;
+
+    private boolean primitiveAsString;
+
+    private boolean packZeros;
+
+    public CompactTranscoder() {
+        this(new DefaultSerializer(), new DefaultDeserializer());
+    }
+
+    /**
+     * @param serializer   对象序列化实现
+     * @param deserializer 对象反序列化实现
+     */
+    public CompactTranscoder(Serializer<Object> serializer, Deserializer<Object> deserializer) {
+        this.serializer = serializer;
+        this.deserializer = deserializer;
+    }
+
+    @Override
+    public CachedData encode(Object o) {
+        if (o instanceof RefreshAheadValue) {
+            RefreshAheadValue value = (RefreshAheadValue) o;
+            ByteBuffer header = ByteBuffer.allocate(8 + 8 + 4)
+                    .putLong(value.getWriteTime()).putLong(value.getDelta()).putInt(value.getExpiration());
+            return wrap(TYPE_REFRESH_AHEAD, header.array(), encode(value.getValue()));
+        }
+        if (o instanceof ChunkedValue) {
+            ChunkedValue value = (ChunkedValue) o;
+            byte[] data = ByteBuffer.allocate(4 + 4 + 4 + 8)
+                    .putInt(value.getFlag()).putInt(value.getLength()).putInt(value.getChunkSize()).putLong(value.getStamp()).array();
+            return new CachedData(FLAG_MAGIC | TYPE_CHUNKED, data, data.length, -1);
+        }
+        if (o instanceof TaggedValue) {
+            TaggedValue value = (TaggedValue) o;
+            return wrap(TYPE_TAGGED, tagHeader(value.getTags(), value.getVersions()), encode(value.getValue()));
+        }
+        int type;
+        byte[] data;
+        if (o instanceof String) {
+            type = TYPE_STRING;
+            data = ((String) o).getBytes(StandardCharsets.UTF_8);
+        } else if (o instanceof byte[]) {
+            type = TYPE_BYTES;
+            data = (byte[]) o;
+        } else if (o instanceof Integer) {
+            type = TYPE_INTEGER;
+            data = toBytes((Integer) o, 4);
+        } else if (o instanceof Long) {
+            type = TYPE_LONG;
+            data = toBytes((Long) o, 8);
+        } else if (o instanceof Boolean) {
+            type = TYPE_BOOLEAN;
+            data = new byte[]{(byte) ((Boolean) o ? 1 : 0)};
+        } else if (o instanceof Double) {
+            type = TYPE_DOUBLE;
+            data = toBytes(Double.doubleToRawLongBits((Double) o), 8);
+        } else if (o instanceof Float) {
+            type = TYPE_FLOAT;
+            data = toBytes(Float.floatToRawIntBits((Float) o), 4);
+        } else if (o instanceof Short) {
+            type = TYPE_SHORT;
+            data = toBytes((Short) o, 2);
+        } else if (o instanceof Byte) {
+            type = TYPE_BYTE;
+            data = new byte[]{(Byte) o};
+        } else if (o instanceof Character) {
+            type = TYPE_CHARACTER;
+            data = toBytes((Character) o, 2);
+        } else if (o instanceof NullValue) {
+            type = TYPE_NULL;
+            data = EMPTY;
+        } else {
+            type = TYPE_OBJECT;
+            data = serialize(o);
+        }
+        int flag = FLAG_MAGIC | type;
+        if (data.length >= compressionThreshold) {
+            byte[] compressed = Lz4.compress(data);
+            if (compressed.length < data.length) {
+                data = compressed;
+                flag |= FLAG_COMPRESSED;
+            }
+        }
+        // 不限制大小，超过memcached单个值上限的数据由缓存拆分为多个分块写入
+        return new CachedData(flag, data, data.length, -1);
+    }
+
+    @Override
+    public Object decode(CachedData d) {
+        int flag = d.getFlag();
+        if ((flag & FLAG_MAGIC_MASK) != FLAG_MAGIC) {
+            return legacy.decode(d);
+        }
+        byte[] data = d.getData();
+        if ((flag & FLAG_COMPRESSED) != 0) {
+            data = Lz4.decompress(data);
+        }
+        switch (flag & FLAG_TYPE_MASK) {
+            case TYPE_STRING:
+                return new String(data, StandardCharsets.UTF_8);
+            case TYPE_BYTES:
+                return data;
+            case TYPE_INTEGER:
+                return (int) fromBytes(data);
+            case TYPE_LONG:
+                return fromBytes(data);
+            case TYPE_BOOLEAN:
+                return data[0] == 1;
+            case TYPE_DOUBLE:
+                return Double.longBitsToDouble(fromBytes(data));
+            case TYPE_FLOAT:
+                return Float.intBitsToFloat((int) fromBytes(data));
+            case TYPE_SHORT:
+                return (short) fromBytes(data);
+            case TYPE_BYTE:
+                return data[0];
+            case TYPE_CHARACTER:
+                return (char) fromBytes(data);
+            case TYPE_NULL:
+                return NullValue.INSTANCE;
+            case TYPE_REFRESH_AHEAD: {
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                long writeTime = buffer.getLong();
+                long delta = buffer.getLong();
+                int expiration = buffer.getInt();
+                return new RefreshAheadValue(unwrap(buffer), writeTime, delta, expiration);
+            }
+            case TYPE_CHUNKED: {
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                return new ChunkedValue(buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getLong());
+            }
+            case TYPE_TAGGED: {
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                String[] tags = new String[buffer.getInt()];
+                long[] versions = new long[tags.length];
+                for (int i = 0; i < tags.length; i++) {
+                    versions[i] = buffer.getLong();
+                    byte[] tag = new byte[buffer.getInt()];
+                    buffer.get(tag);
+                    tags[i] = new String(tag, StandardCharsets.UTF_8);
+                }
+                return new TaggedValue(unwrap(buffer), tags, versions);
+            }
+            default:
+                return deserialize(data);
+        }
+    }
+
+    /**
+     * 标签数，然后每个标签依次是版本号、标签的字节数、标签
+     */
+    private static byte[] tagHeader(String[] tags, long[] versions) {
+        byte[][] bytes = new byte[tags.length][];
+        int length = 4;
+        for (int i = 0; i < tags.length; i++) {
+            bytes[i] = tags[i].getBytes(StandardCharsets.UTF_8);
+            length += 8 + 4 + bytes[i].length;
+        }
+        ByteBuffer header = ByteBuffer.allocate(length).putInt(tags.length);
+        for (int i = 0; i < tags.length; i++) {
+            header.putLong(versions[i]).putInt(bytes[i].length).put(bytes[i]);
+        }
+        return header.array();
+    }
+
+    /**
+     * 包装值的数据：固定的头、被包装的值的flag、被包装的值的数据；被包装的值已按需压缩，包装值本身不再压缩
+     */
+    private static CachedData wrap(int type, byte[] header, CachedData inner) {
+        byte[] innerData = inner.getData();
+        byte[] data = ByteBuffer.allocate(header.length + INNER_FLAG_SIZE + innerData.length)
+                .put(header).putInt(inner.getFlag()).put(innerData).array();
+        return new CachedData(FLAG_MAGIC | type, data, data.length, -1);
+    }
+
+    /**
+     * 读取包装值中固定的头之后的被包装的值
+     */
+    private Object unwrap(ByteBuffer buffer) {
+        int flag = buffer.getInt();
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        return decode(new CachedData(flag, data, data.length, -1));
+    }
+
+    private byte[] serialize(Object o) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        try {
+            serializer.serialize(o, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException("序列化失败: " + o.getClass().getName(), e);
+        }
+        return out.toByteArray();
+    }
+
+    private Object deserialize(byte[] data) {
+        try {
+            return deserializer.deserialize(new ByteArrayInputStream(data));
+        } catch (IOException e) {
+            throw new UncheckedIOException("反序列化失败", e);
+        }
+    }
+
+    private static byte[] toBytes(long value, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = length - 1; i >= 0; i--) {
+            bytes[i] = (byte) value;
+            value >>>= 8;
+        }
+        return bytes;
+    }
+
+    private static long fromBytes(byte[] bytes) {
+        long value = 0;
+        for (byte b : bytes) {
+            value = (value << 8) | (b & 0xFF);
+        }
+        return value;
+    }
+
+    @Override
+    public void setPrimitiveAsString(boolean primitiveAsString) {
+        this.primitiveAsString = primitiveAsString;
+    }
+
+    @Override
+    public void setPackZeros(boolean packZeros) {
+        this.packZeros = packZeros;
+    }
+
+    /**
+     * @param compressionThreshold 数据长度达到该字节数时使用LZ4压缩
+     */
+    @Override
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    @Override
+    public boolean isPrimitiveAsString() {
+        return primitiveAsString;
+    }
+
+    @Override
+    public boolean isPackZeros() {
+        return packZeros;
+    }
+
+    /**
+     * 固定使用LZ4压缩，忽略该设置
+     */
+    @Override
+    public void setCompressionMode(CompressionMode compressionMode) {
+    }
+
+    /**
+     * 延迟加载LZ4，未开启压缩时不需要 lz4-java
+     */
+    private static class Lz4 {
+
+        private static final LZ4Compressor COMPRESSOR = LZ4Factory.fastestInstance().fastCompressor();
+
+        private static final LZ4FastDecompressor DECOMPRESSOR = LZ4Factory.fastestInstance().fastDecompressor();
+
+        /**
+         * 压缩结果前4个字节保存原始长度
+         */
+        private static byte[] compress(byte[] data) {
+            byte[] compressed = new byte[4 + COMPRESSOR.maxCompressedLength(data.length)];
+            writeLength(compressed, data.length);
+            int length = COMPRESSOR.compress(data, 0, data.length, compressed, 4);
+            byte[] result = new byte[4 + length];
+            System.arraycopy(compressed, 0, result, 0, result.length);
+            return result;
+        }
+
+        private static byte[] decompress(byte[] data) {
+            int length = (int) fromBytes(new byte[]{data[0], data[1], data[2], data[3]});
+            byte[] result = new byte[length];
+            DECOMPRESSOR.decompress(data, 4, result, 0, length);
+            return result;
+        }
+
+        private static void writeLength(byte[] target, int length) {
+            target[0] = (byte) (length >>> 24);
+            target[1] = (byte) (length >>> 16);
+            target[2] = (byte) (length >>> 8);
+            target[3] = (byte) length;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package software.sitb.spring.cache.memcached.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 默认的key编码：{@code 缓存名字_版本号_key}。
+ * <p>
+ * key较短且只包含可见ASCII字符时原样保留，方便排查；否则使用 Murmur3 128位hash的base64代替，
+ * 长度固定为22个字符，如 {@code user_3_#kJ0uS6Qe3m1Ff2vYb8QH7w}。
+ * 缓存名字同样处理：不超过 {@link #MAX_NAME_LENGTH} 且只包含可见ASCII字符时原样保留，否则使用hash，
+ * 编码后的key（包括加载锁、分块等内部key）都不超过 maxLength。
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+public class DefaultKeyEncoder implements KeyEncoder {
+
+    /**
+     * 默认的key最大长度
+     */
+    public static final int DEFAULT_MAX_LENGTH = 200;
+
+    /**
+     * memcached key的最大字节数
+     */
+    public static final int MAX_KEY_LENGTH = 250;
+
+    /**
+     * 超过该长度的缓存名字使用hash
+     */
+    public static final int MAX_NAME_LENGTH = 64;
+
+    private static final char HASH_MARK = '#';
+
+    private static final int MAX_BUFFER_CAPACITY = 1024;
+
+    private static final Base64.Encoder BASE64 = Base64.getUrlEncoder().withoutPadding();
+
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(128));
+
+    private final int maxLength;
+
+    public DefaultKeyEncoder() {
+        this(DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+     * @param maxLength 超过该长度的key使用hash，不能超过 {@link #MAX_KEY_LENGTH}，
+     *                  也不能小于hash后的最大长度（缓存名字、版本号和hash）
+     */
+    public DefaultKeyEncoder(int maxLength) {
+        if (maxLength > MAX_KEY_LENGTH || maxLength < MAX_NAME_LENGTH + 48) {
+            throw new IllegalArgumentException("maxLength必须在" + (MAX_NAME_LENGTH + 48) + "和" + MAX_KEY_LENGTH + "之间: " + maxLength);
+        }
+        this.maxLength = maxLength;
+    }
+
+    @Override
+    public String encode(String name, long version, Object key) {
+        String raw = key instanceof String ? (String) key : String.valueOf(key);
+        StringBuilder buffer = buffer();
+        buffer.append(name).append('_').append(version).append('_');
+        if (buffer.length() + raw.length() <= maxLength && isPlain(raw)) {
+            buffer.append(raw);
+        } else {
+            appendHash(buffer, raw);
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * 包含空白、控制字符、非ASCII字符或超过 {@link #MAX_NAME_LENGTH} 的名字使用hash，
+     * 如 {@code 用户 缓存} 转换为 {@code #} 开头的23个字符
+     */
+    @Override
+    public String encodeName(String name) {
+        if (name.length() <= MAX_NAME_LENGTH && isPlain(name)) {
+            return name;
+        }
+        return appendHash(new StringBuilder(1 + 22), name).toString();
+    }
+
+    private static StringBuilder appendHash(StringBuilder buffer, String raw) {
+        long[] hash = Murmur3.hash128(raw.getBytes(StandardCharsets.UTF_8), 0);
+        byte[] bytes = new byte[16];
+        putLong(bytes, 0, hash[0]);
+        putLong(bytes, 8, hash[1]);
+        return buffer.append(HASH_MARK).append(BASE64.encodeToString(bytes));
+    }
+
+    private static StringBuilder buffer() {
+        StringBuilder buffer = BUFFER.get();
+        if (buffer.capacity() > MAX_BUFFER_CAPACITY) {
+            buffer = new StringBuilder(128);
+            BUFFER.set(buffer);
+        }
+        buffer.setLength(0);
+        return buffer;
+    }
+
+    /**
+     * 只包含可见ASCII字符，且不以hash标记开头
+     */
+    private static boolean isPlain(String raw) {
+        if (raw.isEmpty() || raw.charAt(0) == HASH_MARK) {
+            return false;
+        }
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c <= ' ' || c > '~') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void putLong(byte[] bytes, int offset, long value) {
+        for (int i = 0; i < 8; i++) {
+            bytes[offset + i] = (byte) (value >>> (i << 3));
+        }
+    }
+}
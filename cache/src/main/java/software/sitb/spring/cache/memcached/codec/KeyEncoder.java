@@ -0,0 +1,29 @@
+package software.sitb.spring.cache.memcached.codec;
+
+/**
+ * 把缓存key转换为memcached key
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+public interface KeyEncoder {
+
+    /**
+     * 生成memcached key
+     *
+     * @param name    缓存名字
+     * @param version 命名空间版本号
+     * @param key     缓存key
+     * @return memcached key，不能超过250个字节且不能包含空白和控制字符
+     */
+    String encode(String name, long version, Object key);
+
+    /**
+     * 转换缓存名字，创建缓存时调用一次，结果作为 {@link #encode} 的 name 参数，同时用于命名空间版本号的key
+     *
+     * @param name 缓存名字
+     * @return 用于memcached key的名字，默认原样返回
+     */
+    default String encodeName(String name) {
+        return name;
+    }
+}
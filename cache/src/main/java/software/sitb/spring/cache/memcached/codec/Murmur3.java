@@ -0,0 +1,128 @@
+package software.sitb.spring.cache.memcached.codec;
+
+/**
+ * MurmurHash3 x64 128位实现
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+public final class Murmur3 {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private Murmur3() {
+    }
+
+    /**
+     * 计算128位hash
+     *
+     * @param data 数据
+     * @param seed 种子
+     * @return 两个long，共128位
+     */
+    @SuppressWarnings("fallthrough")
+    public static long[] hash128(byte[] data, int seed) {
+        int length = data.length;
+        int blocks = length >>> 4;
+        long h1 = seed & 0xFFFFFFFFL;
+        long h2 = seed & 0xFFFFFFFFL;
+
+        for (int i = 0; i < blocks; i++) {
+            long k1 = getLong(data, i << 4);
+            long k2 = getLong(data, (i << 4) + 8);
+
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        int tail = blocks << 4;
+        long k1 = 0;
+        long k2 = 0;
+        // 剩余不足16字节的部分按原算法逐字节累加，case 之间有意贯穿
+        switch (length & 15) {
+            case 15:
+                k2 ^= (long) (data[tail + 14] & 0xFF) << 48;
+            case 14:
+                k2 ^= (long) (data[tail + 13] & 0xFF) << 40;
+            case 13:
+                k2 ^= (long) (data[tail + 12] & 0xFF) << 32;
+            case 12:
+                k2 ^= (long) (data[tail + 11] & 0xFF) << 24;
+            case 11:
+                k2 ^= (long) (data[tail + 10] & 0xFF) << 16;
+            case 10:
+                k2 ^= (long) (data[tail + 9] & 0xFF) << 8;
+            case 9:
+                k2 ^= data[tail + 8] & 0xFF;
+                h2 ^= mixK2(k2);
+            case 8:
+                k1 ^= (long) (data[tail + 7] & 0xFF) << 56;
+            case 7:
+                k1 ^= (long) (data[tail + 6] & 0xFF) << 48;
+            case 6:
+                k1 ^= (long) (data[tail + 5] & 0xFF) << 40;
+            case 5:
+                k1 ^= (long) (data[tail + 4] & 0xFF) << 32;
+            case 4:
+                k1 ^= (long) (data[tail + 3] & 0xFF) << 24;
+            case 3:
+                k1 ^= (long) (data[tail + 2] & 0xFF) << 16;
+            case 2:
+                k1 ^= (long) (data[tail + 1] & 0xFF) << 8;
+            case 1:
+                k1 ^= data[tail] & 0xFF;
+                h1 ^= mixK1(k1);
+            default:
+                break;
+        }
+
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+        return new long[]{h1, h2};
+    }
+
+    private static long getLong(byte[] data, int offset) {
+        long value = 0;
+        for (int i = 7; i >= 0; i--) {
+            value = (value << 8) | (data[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        k1 *= C2;
+        return k1;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        k2 *= C1;
+        return k2;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
@@ -0,0 +1,150 @@
+package software.sitb.spring.cache.memcached.codec;
+
+import net.rubyeye.xmemcached.transcoders.CachedData;
+import net.rubyeye.xmemcached.transcoders.CompressionMode;
+import net.rubyeye.xmemcached.transcoders.Transcoder;
+import software.sitb.spring.cache.memcached.metrics.Histogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 统计编解码字节数和耗时的 Transcoder，每个缓存一个实例
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+public class StatisticsTranscoder implements Transcoder<Object> {
+
+    private final Transcoder<Object> delegate;
+
+    private final LongAdder encodeCount = new LongAdder();
+
+    private final LongAdder encodedBytes = new LongAdder();
+
+    private final LongAdder encodeNanos = new LongAdder();
+
+    private final LongAdder decodeCount = new LongAdder();
+
+    private final LongAdder decodedBytes = new LongAdder();
+
+    private final LongAdder decodeNanos = new LongAdder();
+
+    /**
+     * 编解码后的值大小
+     */
+    private final Histogram valueSizes;
+
+    public StatisticsTranscoder(Transcoder<Object> delegate) {
+        this(delegate, new Histogram());
+    }
+
+    /**
+     * @param delegate   实际的编解码
+     * @param valueSizes 记录编解码后值的大小
+     */
+    public StatisticsTranscoder(Transcoder<Object> delegate, Histogram valueSizes) {
+        this.delegate = delegate;
+        this.valueSizes = valueSizes;
+    }
+
+    @Override
+    public CachedData encode(Object o) {
+        long start = System.nanoTime();
+        CachedData data = delegate.encode(o);
+        encodeNanos.add(System.nanoTime() - start);
+        encodeCount.increment();
+        encodedBytes.add(data.getData().length);
+        valueSizes.record(data.getData().length);
+        return data;
+    }
+
+    @Override
+    public Object decode(CachedData d) {
+        long start = System.nanoTime();
+        Object value = delegate.decode(d);
+        decodeNanos.add(System.nanoTime() - start);
+        decodeCount.increment();
+        decodedBytes.add(d.getData().length);
+        valueSizes.record(d.getData().length);
+        return value;
+    }
+
+    /**
+     * @return 编码次数
+     */
+    public long getEncodeCount() {
+        return encodeCount.sum();
+    }
+
+    /**
+     * @return 编码后发送的总字节数
+     */
+    public long getEncodedBytes() {
+        return encodedBytes.sum();
+    }
+
+    /**
+     * @return 编码总耗时，单位纳秒
+     */
+    public long getEncodeNanos() {
+        return encodeNanos.sum();
+    }
+
+    /**
+     * @return 解码次数
+     */
+    public long getDecodeCount() {
+        return decodeCount.sum();
+    }
+
+    /**
+     * @return 收到并解码的总字节数
+     */
+    public long getDecodedBytes() {
+        return decodedBytes.sum();
+    }
+
+    /**
+     * @return 解码总耗时，单位纳秒
+     */
+    public long getDecodeNanos() {
+        return decodeNanos.sum();
+    }
+
+    public Histogram getValueSizes() {
+        return valueSizes;
+    }
+
+    public Transcoder<Object> getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void setPrimitiveAsString(boolean primitiveAsString) {
+        delegate.setPrimitiveAsString(primitiveAsString);
+    }
+
+    @Override
+    public void setPackZeros(boolean packZeros) {
+        delegate.setPackZeros(packZeros);
+    }
+
+    @Override
+    public void setCompressionThreshold(int to) {
+        delegate.setCompressionThreshold(to);
+    }
+
+    @Override
+    public boolean isPrimitiveAsString() {
+        return delegate.isPrimitiveAsString();
+    }
+
+    @Override
+    public boolean isPackZeros() {
+        return delegate.isPackZeros();
+    }
+
+    @Override
+    public void setCompressionMode(CompressionMode compressMode) {
+        delegate.setCompressionMode(compressMode);
+    }
+}
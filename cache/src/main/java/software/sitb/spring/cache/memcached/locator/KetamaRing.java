@@ -0,0 +1,165 @@
+package software.sitb.spring.cache.memcached.locator;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * ketama 一致性hash环。
+ * <p>
+ * 每个节点按 {@code 160 * 权重} 个虚拟节点分布在环上，虚拟节点位置为 {@code MD5("host:port-i")} 的每4个字节，
+ * 与 libketama、nginx upstream consistent hash 的分布一致。增删一个节点只影响环上相邻的一段key。
+ *
+ * @param <T> 节点类型
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+public class KetamaRing<T> {
+
+    static final int POINTS_PER_WEIGHT = 160;
+
+    private static final long RING_SIZE = 1L << 32;
+
+    private static final ThreadLocal<MessageDigest> MD5 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final TreeMap<Long, T> points = new TreeMap<>();
+
+    private final Function<T, String> labeler;
+
+    /**
+     * @param nodes   节点
+     * @param labeler 节点在环上的名字，一般为 {@code host:port}
+     * @param weigher 节点权重
+     */
+    public KetamaRing(Collection<T> nodes, Function<T, String> labeler, ToIntFunction<T> weigher) {
+        this.labeler = labeler;
+        for (T node : nodes) {
+            String label = labeler.apply(node);
+            int count = POINTS_PER_WEIGHT * Math.max(1, weigher.applyAsInt(node));
+            for (int i = 0; i < count / 4; i++) {
+                byte[] digest = md5(label + "-" + i);
+                for (int j = 0; j < 4; j++) {
+                    // 位置冲突时保留先加入的节点
+                    points.putIfAbsent(toPoint(digest, j), node);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param key memcached key
+     * @return key 所在的节点，环为空时返回null
+     */
+    public T get(String key) {
+        return getByHash(hash(key));
+    }
+
+    /**
+     * 顺时针找到第一个可用的节点，都不可用时返回key原本所在的节点
+     *
+     * @param key       memcached key
+     * @param available 节点是否可用
+     * @return key 所在的节点，环为空时返回null
+     */
+    public T get(String key, Predicate<T> available) {
+        if (points.isEmpty()) {
+            return null;
+        }
+        long hash = hash(key);
+        T primary = getByHash(hash);
+        if (available.test(primary)) {
+            return primary;
+        }
+        for (T node : points.tailMap(hash, false).values()) {
+            if (available.test(node)) {
+                return node;
+            }
+        }
+        for (T node : points.headMap(hash, true).values()) {
+            if (available.test(node)) {
+                return node;
+            }
+        }
+        return primary;
+    }
+
+    /**
+     * @param hash 环上的位置
+     * @return 该位置顺时针的第一个节点
+     */
+    public T getByHash(long hash) {
+        if (points.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, T> entry = points.ceilingEntry(hash);
+        return null == entry ? points.firstEntry().getValue() : entry.getValue();
+    }
+
+    /**
+     * @return 环上所有虚拟节点的位置，升序
+     */
+    long[] getPoints() {
+        long[] result = new long[points.size()];
+        int i = 0;
+        for (Long point : points.keySet()) {
+            result[i++] = point;
+        }
+        return result;
+    }
+
+    /**
+     * @return 节点名字
+     */
+    public String getLabel(T node) {
+        return labeler.apply(node);
+    }
+
+    public boolean isEmpty() {
+        return points.isEmpty();
+    }
+
+    /**
+     * ketama hash：MD5 的前4个字节，小端序
+     *
+     * @param key memcached key
+     * @return [0, 2^32) 之间的位置
+     */
+    public static long hash(String key) {
+        return toPoint(md5(key), 0);
+    }
+
+    static long ringSize() {
+        return RING_SIZE;
+    }
+
+    private static long toPoint(byte[] digest, int index) {
+        int offset = index * 4;
+        return ((long) (digest[offset + 3] & 0xFF) << 24)
+                | ((long) (digest[offset + 2] & 0xFF) << 16)
+                | ((long) (digest[offset + 1] & 0xFF) << 8)
+                | (digest[offset] & 0xFF);
+    }
+
+    private static byte[] md5(String value) {
+        MessageDigest md5 = MD5.get();
+        md5.reset();
+        return md5.digest(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public String toString() {
+        return "KetamaRing" + Arrays.toString(points.values().stream().map(labeler).distinct().toArray());
+    }
+}
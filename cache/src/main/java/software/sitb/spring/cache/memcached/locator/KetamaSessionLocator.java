@@ -0,0 +1,103 @@
+package software.sitb.spring.cache.memcached.locator;
+
+import com.google.code.yanf4j.core.Session;
+import net.rubyeye.xmemcached.impl.AbstractMemcachedSessionLocator;
+import net.rubyeye.xmemcached.networking.MemcachedSession;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 基于 {@link KetamaRing} 的 xmemcached 节点选择。
+ * <p>
+ * 节点在环上的名字是连接字符串中配置的 {@code host:port}，不受DNS解析影响，
+ * 与 {@link KeyMovementEstimator} 的计算结果一致。节点的权重取自连接字符串，没有配置的节点权重为1。
+ * 节点的多个连接随机选择一个。
+ * 非 failureMode 下节点断开时key顺时针转移到下一个可用节点。
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+public class KetamaSessionLocator extends AbstractMemcachedSessionLocator {
+
+    private volatile KetamaRing<String> ring = new KetamaRing<>(Collections.emptyList(), label -> label, label -> 1);
+
+    private volatile Map<String, List<Session>> sessions = Collections.emptyMap();
+
+    /**
+     * 节点名字 {@code host:port} 和权重
+     */
+    private final Map<String, Integer> weights;
+
+    public KetamaSessionLocator() {
+        this(Collections.emptyMap());
+    }
+
+    /**
+     * @param weights 节点名字 {@code host:port} 和权重，见 {@link ServerAddress#getLabel()}
+     */
+    public KetamaSessionLocator(Map<String, Integer> weights) {
+        this.weights = weights;
+    }
+
+    @Override
+    public Session getSessionByKey(String key) {
+        Map<String, List<Session>> sessions = this.sessions;
+        String label = failureMode ? ring.get(key) : ring.get(key, node -> hasOpenSession(sessions.get(node)));
+        if (null == label) {
+            return null;
+        }
+        return select(sessions.get(label));
+    }
+
+    @Override
+    public void updateSessions(Collection<Session> list) {
+        Map<String, List<Session>> sessions = new HashMap<>();
+        for (Session session : list) {
+            sessions.computeIfAbsent(getLabel(session), key -> new ArrayList<>()).add(session);
+        }
+        this.ring = new KetamaRing<>(sessions.keySet(), label -> label, label -> weights.getOrDefault(label, 1));
+        this.sessions = sessions;
+    }
+
+    /**
+     * @return 当前的一致性hash环
+     */
+    public KetamaRing<String> getRing() {
+        return ring;
+    }
+
+    private static String getLabel(Session session) {
+        InetSocketAddress address = session.getRemoteSocketAddress();
+        if (session instanceof MemcachedSession && null != ((MemcachedSession) session).getInetSocketAddressWrapper()) {
+            address = ((MemcachedSession) session).getInetSocketAddressWrapper().getInetSocketAddress();
+        }
+        return address.getHostString() + ":" + address.getPort();
+    }
+
+    private static boolean hasOpenSession(List<Session> sessions) {
+        for (Session session : sessions) {
+            if (!session.isClosed()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Session select(List<Session> sessions) {
+        int size = sessions.size();
+        int start = size == 1 ? 0 : ThreadLocalRandom.current().nextInt(size);
+        for (int i = 0; i < size; i++) {
+            Session session = sessions.get((start + i) % size);
+            if (!session.isClosed()) {
+                return session;
+            }
+        }
+        return sessions.get(start);
+    }
+}
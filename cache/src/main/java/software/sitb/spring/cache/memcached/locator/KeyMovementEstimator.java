@@ -0,0 +1,138 @@
+package software.sitb.spring.cache.memcached.locator;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 估算集群拓扑变化（增删节点、调整权重）时需要迁移的key比例。
+ * <p>
+ * ketama 的比例按环上归属发生变化的区间长度精确计算，取模分布的比例通过采样估算，
+ * 理想比例是按权重占比变化计算的下限。
+ * <pre>
+ * java -cp ... software.sitb.spring.cache.memcached.locator.KeyMovementEstimator \
+ *     "10.0.0.1:11211 10.0.0.2:11211" "10.0.0.1:11211 10.0.0.2:11211 10.0.0.3:11211:2"
+ * </pre>
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+public class KeyMovementEstimator {
+
+    private static final int MODULO_SAMPLES = 100_000;
+
+    private final List<ServerAddress> before;
+
+    private final List<ServerAddress> after;
+
+    /**
+     * @param before 变化前的节点
+     * @param after  变化后的节点
+     */
+    public KeyMovementEstimator(List<ServerAddress> before, List<ServerAddress> after) {
+        this.before = before;
+        this.after = after;
+    }
+
+    /**
+     * @param before        变化前的连接字符串
+     * @param after         变化后的连接字符串
+     * @param defaultWeight 没有指定权重的节点使用的权重
+     */
+    public KeyMovementEstimator(String before, String after, int defaultWeight) {
+        this(ServerAddress.parse(before, defaultWeight), ServerAddress.parse(after, defaultWeight));
+    }
+
+    /**
+     * @return 使用ketama一致性hash时迁移的key比例，0~1
+     */
+    public double getKetamaMovement() {
+        KetamaRing<ServerAddress> from = ring(before);
+        KetamaRing<ServerAddress> to = ring(after);
+        long[] a = from.getPoints();
+        long[] b = to.getPoints();
+        long[] points = new long[a.length + b.length];
+        System.arraycopy(a, 0, points, 0, a.length);
+        System.arraycopy(b, 0, points, a.length, b.length);
+        Arrays.sort(points);
+        // (points[i-1], points[i]] 内的key都落在 points[i] 顺时针的节点，第一段包含环的首尾
+        long moved = 0;
+        for (int i = 0; i < points.length; i++) {
+            long point = points[i];
+            long length = i == 0 ? KetamaRing.ringSize() - points[points.length - 1] + point : point - points[i - 1];
+            if (length > 0 && !from.getLabel(from.getByHash(point)).equals(to.getLabel(to.getByHash(point)))) {
+                moved += length;
+            }
+        }
+        return (double) moved / KetamaRing.ringSize();
+    }
+
+    /**
+     * 采样估算使用取模分布（xmemcached 默认）时迁移的key比例，权重按节点重复次数计算
+     *
+     * @return 0~1
+     */
+    public double getModuloMovement() {
+        String[] from = expand(before);
+        String[] to = expand(after);
+        int moved = 0;
+        for (int i = 0; i < MODULO_SAMPLES; i++) {
+            long hash = KetamaRing.hash("key-" + i);
+            if (!from[(int) (hash % from.length)].equals(to[(int) (hash % to.length)])) {
+                moved++;
+            }
+        }
+        return (double) moved / MODULO_SAMPLES;
+    }
+
+    /**
+     * @return 按权重占比变化计算的最少迁移比例，0~1
+     */
+    public double getIdealMovement() {
+        Map<String, Double> from = shares(before);
+        Map<String, Double> to = shares(after);
+        double moved = 0;
+        for (Map.Entry<String, Double> entry : from.entrySet()) {
+            moved += Math.max(0, entry.getValue() - to.getOrDefault(entry.getKey(), 0.0));
+        }
+        return moved;
+    }
+
+    /**
+     * @return 可读的报告
+     */
+    public String report() {
+        return String.format(Locale.ROOT, "nodes: %d -> %d%nketama: %.2f%%%nmodulo: %.2f%%%nideal:  %.2f%%",
+                before.size(), after.size(), getKetamaMovement() * 100, getModuloMovement() * 100, getIdealMovement() * 100);
+    }
+
+    private static KetamaRing<ServerAddress> ring(List<ServerAddress> servers) {
+        return new KetamaRing<>(servers, ServerAddress::getLabel, ServerAddress::getWeight);
+    }
+
+    private static String[] expand(List<ServerAddress> servers) {
+        return servers.stream()
+                .flatMap(server -> Collections.nCopies(server.getWeight(), server.getLabel()).stream())
+                .toArray(String[]::new);
+    }
+
+    private static Map<String, Double> shares(List<ServerAddress> servers) {
+        double total = servers.stream().mapToInt(ServerAddress::getWeight).sum();
+        Map<String, Double> shares = new HashMap<>();
+        for (ServerAddress server : servers) {
+            shares.merge(server.getLabel(), server.getWeight() / total, Double::sum);
+        }
+        return shares;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("用法: KeyMovementEstimator \"变化前的连接字符串\" \"变化后的连接字符串\" [默认权重]");
+            System.exit(1);
+        }
+        int defaultWeight = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        System.out.println(new KeyMovementEstimator(args[0], args[1], defaultWeight).report());
+    }
+}
@@ -0,0 +1,88 @@
+package software.sitb.spring.cache.memcached.locator;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 连接字符串中的一个节点，格式为 {@code host:port} 或 {@code host:port:weight}
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+public class ServerAddress {
+
+    private final String host;
+
+    private final int port;
+
+    private final int weight;
+
+    public ServerAddress(String host, int port, int weight) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("权重必须大于0: " + host + ":" + port + ":" + weight);
+        }
+        this.host = host;
+        this.port = port;
+        this.weight = weight;
+    }
+
+    /**
+     * 解析连接字符串，多个节点用空格或逗号分隔，例如 {@code "10.0.0.1:11211:2 10.0.0.2:11211"}、
+     * {@code "10.0.0.1:11211,10.0.0.2:11211"}，与 xmemcached 的 AddrUtil 相同
+     *
+     * @param connectString 连接字符串
+     * @param defaultWeight 没有指定权重的节点使用的权重
+     * @return 节点列表
+     */
+    public static List<ServerAddress> parse(String connectString, int defaultWeight) {
+        List<ServerAddress> servers = new ArrayList<>();
+        for (String server : null == connectString ? new String[0] : connectString.split("[\\s,]+")) {
+            if (server.isEmpty()) {
+                continue;
+            }
+            String[] parts = server.split(":");
+            if (parts.length < 2 || parts.length > 3 || parts[0].isEmpty()) {
+                throw new IllegalArgumentException("无效的节点 '" + server + "'，格式为 host:port[:weight]");
+            }
+            try {
+                int port = Integer.parseInt(parts[1]);
+                int weight = parts.length == 3 ? Integer.parseInt(parts[2]) : defaultWeight;
+                servers.add(new ServerAddress(parts[0], port, weight));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("无效的节点 '" + server + "'，格式为 host:port[:weight]", e);
+            }
+        }
+        if (servers.isEmpty()) {
+            throw new IllegalArgumentException("连接字符串不能为空");
+        }
+        return servers;
+    }
+
+    public InetSocketAddress toSocketAddress() {
+        return new InetSocketAddress(host, port);
+    }
+
+    /**
+     * @return {@code host:port}，一致性hash环上节点的名字
+     */
+    public String getLabel() {
+        return host + ":" + port;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    @Override
+    public String toString() {
+        return getLabel() + ":" + weight;
+    }
+}
@@ -0,0 +1,222 @@
+package software.sitb.spring.cache.memcached.meta;
+
+import com.google.code.yanf4j.core.Session;
+import net.rubyeye.xmemcached.MemcachedClient;
+import net.rubyeye.xmemcached.XMemcachedClient;
+import net.rubyeye.xmemcached.exception.MemcachedException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * memcached meta 文本协议（mg/ms/md）客户端，需要 memcached 1.6.10 及以上版本。
+ * <p>
+ * 与二进制协议的客户端配合使用：key所在的节点由二进制客户端的节点选择器决定，两种协议访问的是同一份数据。
+ * meta 协议可以在一次往返中表达二进制协议做不到的语义：
+ * <ul>
+ * <li>{@code md key I}：只把值标记为失效，重新加载期间其他请求可以继续读到旧值（X）</li>
+ * <li>{@code mg key N}：未命中时创建占位值，只有第一个请求拿到加载权（W），其他请求看到已发出（Z）</li>
+ * <li>{@code mg key T}：读取的同时更新过期时间</li>
+ * </ul>
+ * 每个节点一个连接，所有命令都带 opaque，并发的命令合并为一次网络写。
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+public class MetaClient implements Closeable {
+
+    private static final int MAX_KEY_LENGTH = 250;
+
+    private final Supplier<MemcachedClient> client;
+
+    private final int connectTimeout;
+
+    private final ConcurrentMap<InetSocketAddress, MetaConnection> connections = new ConcurrentHashMap<>();
+
+    private volatile boolean closed;
+
+    /**
+     * @param client         二进制协议客户端，用于选择key所在的节点，第一次发送命令时才获取
+     * @param connectTimeout 连接超时，单位毫秒
+     */
+    public MetaClient(Supplier<MemcachedClient> client, int connectTimeout) {
+        this.client = client;
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * 读取值 {@code mg key v f c t}
+     *
+     * @param key     memcached key
+     * @param vivify  大于0时未命中会创建存活 vivify 秒的占位值并返回 W，其他请求返回 Z
+     * @param touch   大于0时同时把过期时间更新为 touch 秒
+     * @param timeout 超时时间，单位毫秒
+     * @return 响应，未命中时状态为 EN
+     */
+    public MetaResponse get(String key, int vivify, int touch, long timeout) throws InterruptedException, MemcachedException, TimeoutException {
+        StringBuilder flags = new StringBuilder(" v f c t");
+        if (vivify > 0) {
+            flags.append(" N").append(vivify);
+        }
+        if (touch > 0) {
+            flags.append(" T").append(touch);
+        }
+        return await(send("mg", key, flags.toString(), null), timeout);
+    }
+
+    /**
+     * 写入值 {@code ms key <size> F T}，同时清除失效标记和占位值
+     *
+     * @param key         memcached key
+     * @param clientFlags 编码类型等标志
+     * @param value       编码后的值
+     * @param ttl         过期时间，单位秒
+     * @param timeout     超时时间，单位毫秒
+     * @return 响应，成功时状态为 HD
+     */
+    public MetaResponse set(String key, int clientFlags, byte[] value, int ttl, long timeout) throws InterruptedException, MemcachedException, TimeoutException {
+        String flags = " " + value.length + " F" + Integer.toUnsignedString(clientFlags) + " T" + ttl;
+        return await(send("ms", key, flags, value), timeout);
+    }
+
+    /**
+     * 删除值 {@code md key}
+     *
+     * @param key             memcached key
+     * @param staleExpiration 大于0时不删除，只标记为失效 {@code I T<staleExpiration>}，重新加载期间继续返回旧值
+     * @param timeout         超时时间，单位毫秒
+     * @return 响应，成功时状态为 HD，不存在时为 NF
+     */
+    public MetaResponse delete(String key, int staleExpiration, long timeout) throws InterruptedException, MemcachedException, TimeoutException {
+        String flags = staleExpiration > 0 ? " I T" + staleExpiration : "";
+        return await(send("md", key, flags, null), timeout);
+    }
+
+    /**
+     * 只在 cas 一致时删除 {@code md key C<cas>}，用于删除自己创建的占位值，不会删除其他请求已经写入的值
+     *
+     * @param key     memcached key
+     * @param cas     mg 返回的 cas
+     * @param timeout 超时时间，单位毫秒
+     * @return 响应，成功时状态为 HD，cas 不一致时为 EX，不存在时为 NF
+     */
+    public MetaResponse delete(String key, long cas, long timeout) throws InterruptedException, MemcachedException, TimeoutException {
+        return await(send("md", key, " C" + cas, null), timeout);
+    }
+
+    /**
+     * 发送任意meta命令，不等待响应；opaque 由连接自动添加
+     *
+     * @param command 命令，如 mg、ms、md、ma
+     * @param key     memcached key，包含空白或非ASCII字符时以base64发送
+     * @param flags   key之后的参数，以空格开头，可以为空字符串
+     * @param value   ms 的值，其他命令为null
+     * @return 响应
+     */
+    public CompletableFuture<MetaResponse> send(String command, String key, String flags, byte[] value) {
+        try {
+            String line = isPlain(key)
+                    ? command + " " + key + flags
+                    : command + " " + Base64.getEncoder().encodeToString(key.getBytes(StandardCharsets.UTF_8)) + flags + " b";
+            return connection(key).send(line, value);
+        } catch (MemcachedException e) {
+            CompletableFuture<MetaResponse> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (MetaConnection connection : connections.values()) {
+            connection.close();
+        }
+        connections.clear();
+    }
+
+    private MetaResponse await(CompletableFuture<MetaResponse> future, long timeout) throws InterruptedException, MemcachedException, TimeoutException {
+        try {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof MemcachedException) {
+                throw (MemcachedException) e.getCause();
+            }
+            throw new MemcachedException(e.getCause());
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            throw new TimeoutException("meta命令超时: " + timeout + "ms");
+        }
+    }
+
+    private MetaConnection connection(String key) throws MemcachedException {
+        if (closed) {
+            throw new MemcachedException("meta客户端已关闭");
+        }
+        InetSocketAddress address = addressOf(key);
+        MetaConnection connection = connections.get(address);
+        if (null != connection && !connection.isClosed()) {
+            return connection;
+        }
+        try {
+            return connections.compute(address, (a, c) -> null == c || c.isClosed() ? connect(a) : c);
+        } catch (UncheckedIOException e) {
+            throw new MemcachedException("连接memcached失败: " + address, e.getCause());
+        }
+    }
+
+    private MetaConnection connect(InetSocketAddress address) {
+        try {
+            return new MetaConnection(address, connectTimeout);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 与二进制客户端使用同一个节点
+     */
+    private InetSocketAddress addressOf(String key) throws MemcachedException {
+        MemcachedClient memcachedClient;
+        try {
+            memcachedClient = client.get();
+        } catch (IllegalStateException e) {
+            throw new MemcachedException(e.getMessage(), e);
+        }
+        if (memcachedClient instanceof XMemcachedClient) {
+            Session session = ((XMemcachedClient) memcachedClient).getSessionLocator().getSessionByKey(key);
+            if (null != session) {
+                return session.getRemoteSocketAddress();
+            }
+        }
+        Collection<InetSocketAddress> servers = memcachedClient.getAvailableServers();
+        if (servers.size() == 1) {
+            return servers.iterator().next();
+        }
+        throw new MemcachedException("没有可用的memcached节点: " + key);
+    }
+
+    private static boolean isPlain(String key) {
+        if (key.length() > MAX_KEY_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c <= ' ' || c >= 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,232 @@
+package software.sitb.spring.cache.memcached.meta;
+
+import net.rubyeye.xmemcached.exception.MemcachedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 到一个memcached节点的meta协议连接。
+ * <p>
+ * 写线程每次取出所有等待发送的命令，写完后只刷新一次，并发的请求共用一次网络写；
+ * 读线程按发送顺序读取响应，并通过 opaque 校验响应和请求的对应关系。
+ * 连接出错后关闭，所有等待中的请求以 {@link MemcachedException} 失败。
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+final class MetaConnection implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetaConnection.class);
+
+    /**
+     * 一次网络写最多包含的命令数
+     */
+    private static final int MAX_BATCH = 256;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private final String name;
+
+    private final Socket socket;
+
+    private final OutputStream out;
+
+    private final InputStream in;
+
+    private final BlockingQueue<Request> pending = new LinkedBlockingQueue<>();
+
+    private final Queue<Request> inFlight = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger opaque = new AtomicInteger();
+
+    private final Thread writer;
+
+    private volatile boolean closed;
+
+    MetaConnection(InetSocketAddress address, int connectTimeout) throws IOException {
+        this.name = address.getHostString() + ":" + address.getPort();
+        this.socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.connect(address, connectTimeout);
+            this.out = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+            this.in = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        this.writer = new Thread(this::write, "memcached-meta-writer-" + name);
+        this.writer.setDaemon(true);
+        this.writer.start();
+        Thread reader = new Thread(this::read, "memcached-meta-reader-" + name);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * 发送命令，不等待响应
+     *
+     * @param command 命令行，不包含 opaque 和结尾的 \r\n，例如 {@code mg key v f}
+     * @param value   ms 的值，其他命令为null
+     * @return 响应
+     */
+    CompletableFuture<MetaResponse> send(String command, byte[] value) {
+        Request request = new Request(command, value, opaque.incrementAndGet());
+        if (closed) {
+            request.future.completeExceptionally(new MemcachedException("meta连接已关闭: " + name));
+            return request.future;
+        }
+        pending.add(request);
+        if (closed && pending.remove(request)) {
+            request.future.completeExceptionally(new MemcachedException("meta连接已关闭: " + name));
+        }
+        return request.future;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        fail(new MemcachedException("meta连接已关闭: " + name));
+    }
+
+    private void write() {
+        List<Request> batch = new ArrayList<>(MAX_BATCH);
+        try {
+            while (!closed) {
+                batch.add(pending.take());
+                pending.drainTo(batch, MAX_BATCH - 1);
+                for (Request request : batch) {
+                    // 先登记再写，保证读线程收到响应时能找到请求
+                    inFlight.add(request);
+                    out.write(request.command.getBytes(StandardCharsets.UTF_8));
+                    out.write((" O" + request.opaque).getBytes(StandardCharsets.US_ASCII));
+                    out.write(CRLF);
+                    if (null != request.value) {
+                        out.write(request.value);
+                        out.write(CRLF);
+                    }
+                }
+                out.flush();
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void read() {
+        try {
+            while (!closed) {
+                String line = readLine();
+                Request request = inFlight.poll();
+                if (null == request) {
+                    throw new IOException("收到多余的响应: " + line);
+                }
+                if (line.startsWith("ERROR") || line.startsWith("CLIENT_ERROR") || line.startsWith("SERVER_ERROR")) {
+                    request.future.completeExceptionally(new MemcachedException(line));
+                    continue;
+                }
+                MetaResponse response = MetaResponse.parse(line);
+                if (null != response.getValue()) {
+                    readFully(response.getValue());
+                    readLine();
+                }
+                if (null != response.getOpaque() && response.getOpaque() != request.opaque) {
+                    throw new IOException("响应的opaque不匹配: " + response.getOpaque() + " != " + request.opaque);
+                }
+                request.future.complete(response);
+            }
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                throw new EOFException("连接已断开: " + name);
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return new String(line.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private void readFully(byte[] value) throws IOException {
+        int offset = 0;
+        while (offset < value.length) {
+            int read = in.read(value, offset, value.length - offset);
+            if (read < 0) {
+                throw new EOFException("连接已断开: " + name);
+            }
+            offset += read;
+        }
+    }
+
+    private synchronized void fail(Throwable cause) {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (!(cause instanceof MemcachedException)) {
+            LOGGER.warn("meta连接[{}]出错，已关闭: {}", name, cause.getMessage());
+        }
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+        writer.interrupt();
+        MemcachedException exception = cause instanceof MemcachedException
+                ? (MemcachedException) cause : new MemcachedException("meta连接出错: " + name, cause);
+        Request request;
+        while (null != (request = inFlight.poll()) || null != (request = pending.poll())) {
+            request.future.completeExceptionally(exception);
+        }
+    }
+
+    private static class Request {
+
+        private final String command;
+
+        private final byte[] value;
+
+        private final int opaque;
+
+        private final CompletableFuture<MetaResponse> future = new CompletableFuture<>();
+
+        private Request(String command, byte[] value, int opaque) {
+            this.command = command;
+            this.value = value;
+            this.opaque = opaque;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package software.sitb.spring.cache.memcached.meta;
+
+/**
+ * meta协议命令的响应，例如 {@code VA 5 f3 c12 W} 或 {@code EN}
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+public class MetaResponse {
+
+    /**
+     * 命中并返回了值
+     */
+    public static final String VALUE = "VA";
+
+    /**
+     * 成功，没有值
+     */
+    public static final String HEADER = "HD";
+
+    /**
+     * mg 未命中
+     */
+    public static final String END = "EN";
+
+    /**
+     * ms 未写入
+     */
+    public static final String NOT_STORED = "NS";
+
+    /**
+     * cas 不匹配
+     */
+    public static final String EXISTS = "EX";
+
+    /**
+     * md、带cas的ms 未找到
+     */
+    public static final String NOT_FOUND = "NF";
+
+    private final String status;
+
+    private byte[] value;
+
+    private int clientFlags;
+
+    private long cas;
+
+    private int ttl = -1;
+
+    private Integer opaque;
+
+    private boolean win;
+
+    private boolean stale;
+
+    private boolean winSent;
+
+    private MetaResponse(String status) {
+        this.status = status;
+    }
+
+    /**
+     * 解析响应行，不包含结尾的 \r\n
+     *
+     * @param line 响应行
+     * @return 响应，VA 的值数组已按长度分配，由调用方读入
+     */
+    static MetaResponse parse(String line) {
+        String[] tokens = line.split(" ");
+        MetaResponse response = new MetaResponse(tokens[0]);
+        int index = 1;
+        if (VALUE.equals(response.status)) {
+            response.value = new byte[Integer.parseInt(tokens[1])];
+            index = 2;
+        }
+        for (int i = index; i < tokens.length; i++) {
+            String token = tokens[i];
+            if (token.isEmpty()) {
+                continue;
+            }
+            String argument = token.substring(1);
+            switch (token.charAt(0)) {
+                case 'f':
+                    response.clientFlags = Integer.parseUnsignedInt(argument);
+                    break;
+                case 'c':
+                    response.cas = Long.parseLong(argument);
+                    break;
+                case 't':
+                    response.ttl = Integer.parseInt(argument);
+                    break;
+                case 'O':
+                    response.opaque = Integer.parseInt(argument);
+                    break;
+                case 'W':
+                    response.win = true;
+                    break;
+                case 'X':
+                    response.stale = true;
+                    break;
+                case 'Z':
+                    response.winSent = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return response;
+    }
+
+    /**
+     * @return 响应码，如 VA、HD、EN
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    /**
+     * @return mg 命中（包括已失效的旧值和占位值）
+     */
+    public boolean isHit() {
+        return VALUE.equals(status) || HEADER.equals(status);
+    }
+
+    /**
+     * @return ms、md 执行成功
+     */
+    public boolean isSuccess() {
+        return HEADER.equals(status);
+    }
+
+    /**
+     * @return 本次请求拿到了重新加载的权利（W），需要由调用方加载并写入
+     */
+    public boolean isWin() {
+        return win;
+    }
+
+    /**
+     * @return 值已被 {@code md I} 标记为失效（X），可以在重新加载期间继续使用
+     */
+    public boolean isStale() {
+        return stale;
+    }
+
+    /**
+     * @return 重新加载的权利已经给了其他请求（Z）
+     */
+    public boolean isWinSent() {
+        return winSent;
+    }
+
+    /**
+     * @return 未命中时由 {@code N} 创建的空占位值，没有实际内容
+     */
+    public boolean isPlaceholder() {
+        return VALUE.equals(status) && !stale && (win || winSent) && value.length == 0 && clientFlags == 0;
+    }
+
+    public byte[] getValue() {
+        return value;
+    }
+
+    public int getClientFlags() {
+        return clientFlags;
+    }
+
+    public long getCas() {
+        return cas;
+    }
+
+    /**
+     * @return 剩余存活时间，单位秒，-1表示不过期
+     */
+    public int getTtl() {
+        return ttl;
+    }
+
+    Integer getOpaque() {
+        return opaque;
+    }
+
+    @Override
+    public String toString() {
+        return null == value ? status : status + " " + value.length;
+    }
+}
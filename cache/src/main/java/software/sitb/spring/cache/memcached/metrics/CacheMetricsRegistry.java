@@ -0,0 +1,25 @@
+package software.sitb.spring.cache.memcached.metrics;
+
+import software.sitb.spring.cache.memcached.MemcachedCache;
+
+/**
+ * 缓存统计的发布方式，例如JMX、Micrometer等，由 MemcachedCacheManager 在创建和关闭缓存时调用
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+public interface CacheMetricsRegistry {
+
+    /**
+     * 发布缓存的统计
+     *
+     * @param cache 缓存
+     */
+    void register(MemcachedCache cache);
+
+    /**
+     * 取消发布
+     *
+     * @param cache 缓存
+     */
+    void unregister(MemcachedCache cache);
+}
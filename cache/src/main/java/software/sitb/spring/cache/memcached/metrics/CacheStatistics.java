@@ -0,0 +1,189 @@
+package software.sitb.spring.cache.memcached.metrics;
+
+import software.sitb.spring.cache.memcached.CircuitBreakers;
+import software.sitb.spring.cache.memcached.HedgedReader;
+import software.sitb.spring.cache.memcached.MemcachedCache;
+import software.sitb.spring.cache.memcached.NearCache;
+import software.sitb.spring.cache.memcached.OffHeapCache;
+import software.sitb.spring.cache.memcached.metrics.MemcachedCacheMetrics.Operation;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+public class CacheStatistics implements CacheStatisticsMXBean {
+
+    private final MemcachedCache cache;
+
+    private final MemcachedCacheMetrics metrics;
+
+    public CacheStatistics(MemcachedCache cache) {
+        this.cache = cache;
+        this.metrics = cache.getMetrics();
+    }
+
+    @Override
+    public long getHitCount() {
+        return metrics.getHitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return metrics.getMissCount();
+    }
+
+    @Override
+    public long getNearCacheHitCount() {
+        NearCache nearCache = cache.getNearCache();
+        return null == nearCache ? 0 : nearCache.getHitCount();
+    }
+
+    @Override
+    public long getNearCacheMissCount() {
+        NearCache nearCache = cache.getNearCache();
+        return null == nearCache ? 0 : nearCache.getMissCount();
+    }
+
+    @Override
+    public long getOffHeapHitCount() {
+        OffHeapCache offHeapCache = cache.getOffHeapCache();
+        return null == offHeapCache ? 0 : offHeapCache.getHitCount();
+    }
+
+    @Override
+    public long getOffHeapMissCount() {
+        OffHeapCache offHeapCache = cache.getOffHeapCache();
+        return null == offHeapCache ? 0 : offHeapCache.getMissCount();
+    }
+
+    @Override
+    public long getRemoteHitCount() {
+        return metrics.getRemoteHitCount();
+    }
+
+    @Override
+    public long getRemoteMissCount() {
+        return metrics.getRemoteMissCount();
+    }
+
+    @Override
+    public long getPutCount() {
+        return metrics.getPutCount();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return metrics.getEvictionCount();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return metrics.getErrorCount();
+    }
+
+    @Override
+    public long getGetLatencyP50() {
+        return micros(Operation.GET, 50);
+    }
+
+    @Override
+    public long getGetLatencyP99() {
+        return micros(Operation.GET, 99);
+    }
+
+    @Override
+    public long getGetLatencyMax() {
+        return TimeUnit.NANOSECONDS.toMicros(metrics.getLatency(Operation.GET).getMax());
+    }
+
+    @Override
+    public long getPutLatencyP50() {
+        return micros(Operation.PUT, 50);
+    }
+
+    @Override
+    public long getPutLatencyP99() {
+        return micros(Operation.PUT, 99);
+    }
+
+    @Override
+    public long getPutLatencyMax() {
+        return TimeUnit.NANOSECONDS.toMicros(metrics.getLatency(Operation.PUT).getMax());
+    }
+
+    @Override
+    public long getLoadCount() {
+        return metrics.getLatency(Operation.LOAD).getCount();
+    }
+
+    @Override
+    public long getLoadTimeP50() {
+        return micros(Operation.LOAD, 50);
+    }
+
+    @Override
+    public long getLoadTimeP99() {
+        return micros(Operation.LOAD, 99);
+    }
+
+    @Override
+    public long getValueSizeP50() {
+        return metrics.getValueSizes().getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getValueSizeP99() {
+        return metrics.getValueSizes().getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getValueSizeMax() {
+        return metrics.getValueSizes().getMax();
+    }
+
+    @Override
+    public long getEncodedBytes() {
+        return cache.getTranscoder().getEncodedBytes();
+    }
+
+    @Override
+    public long getDecodedBytes() {
+        return cache.getTranscoder().getDecodedBytes();
+    }
+
+    @Override
+    public Map<String, Long> getHotKeys() {
+        return cache.getHotKeys();
+    }
+
+    @Override
+    public Map<String, String> getCircuitBreakerStates() {
+        CircuitBreakers circuitBreakers = cache.getCircuitBreakers();
+        return null == circuitBreakers ? Collections.emptyMap() : circuitBreakers.getStates();
+    }
+
+    @Override
+    public long getHedgeDelay() {
+        HedgedReader hedgedReader = cache.getHedgedReader();
+        return null == hedgedReader ? 0 : hedgedReader.getDelay();
+    }
+
+    @Override
+    public long getHedgeCount() {
+        HedgedReader hedgedReader = cache.getHedgedReader();
+        return null == hedgedReader ? 0 : hedgedReader.getHedgeCount();
+    }
+
+    @Override
+    public long getHedgeWinCount() {
+        HedgedReader hedgedReader = cache.getHedgedReader();
+        return null == hedgedReader ? 0 : hedgedReader.getHedgeWinCount();
+    }
+
+    private long micros(Operation operation, double percentile) {
+        return TimeUnit.NANOSECONDS.toMicros(metrics.getLatency(operation).getValueAtPercentile(percentile));
+    }
+}
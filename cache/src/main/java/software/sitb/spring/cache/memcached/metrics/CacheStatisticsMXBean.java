@@ -0,0 +1,86 @@
+package software.sitb.spring.cache.memcached.metrics;
+
+import java.util.Map;
+
+/**
+ * 通过JMX发布的缓存统计，延迟单位为微秒
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+public interface CacheStatisticsMXBean {
+
+    long getHitCount();
+
+    long getMissCount();
+
+    long getNearCacheHitCount();
+
+    long getNearCacheMissCount();
+
+    long getOffHeapHitCount();
+
+    long getOffHeapMissCount();
+
+    long getRemoteHitCount();
+
+    long getRemoteMissCount();
+
+    long getPutCount();
+
+    long getEvictionCount();
+
+    long getErrorCount();
+
+    long getGetLatencyP50();
+
+    long getGetLatencyP99();
+
+    long getGetLatencyMax();
+
+    long getPutLatencyP50();
+
+    long getPutLatencyP99();
+
+    long getPutLatencyMax();
+
+    long getLoadCount();
+
+    long getLoadTimeP50();
+
+    long getLoadTimeP99();
+
+    long getValueSizeP50();
+
+    long getValueSizeP99();
+
+    long getValueSizeMax();
+
+    long getEncodedBytes();
+
+    long getDecodedBytes();
+
+    /**
+     * @return 热点key和每秒访问次数
+     */
+    Map<String, Long> getHotKeys();
+
+    /**
+     * @return 节点和熔断器状态
+     */
+    Map<String, String> getCircuitBreakerStates();
+
+    /**
+     * @return 当前的对冲延迟，单位微秒
+     */
+    long getHedgeDelay();
+
+    /**
+     * @return 发出的对冲读取次数
+     */
+    long getHedgeCount();
+
+    /**
+     * @return 副本集群先返回的次数
+     */
+    long getHedgeWinCount();
+}
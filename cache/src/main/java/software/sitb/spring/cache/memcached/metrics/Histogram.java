@@ -0,0 +1,106 @@
+package software.sitb.spring.cache.memcached.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 对数分桶的直方图，记录延迟（纳秒）或数据大小（字节）。
+ * <p>
+ * 与HdrHistogram类似，每个2的幂区间再分为16个子桶，相对误差约6%，
+ * 记录只有一次原子自增，不加锁、不分配对象。
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder sum = new LongAdder();
+
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * 记录一个值
+     *
+     * @param value 值，小于0时按0记录
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(indexOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * 获取百分位数
+     *
+     * @param percentile 0 ~ 100
+     * @return 对应的值，没有记录时返回0
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = count.sum();
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long cumulative = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            cumulative += counts.get(i);
+            if (cumulative >= target) {
+                return Math.min(highestValueAt(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long total = count.sum();
+        return total == 0 ? 0 : (double) sum.sum() / total;
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * 桶内的最大值
+     */
+    private static long highestValueAt(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKET_COUNT;
+        long lowest = (1L << exponent) | (subBucket << (exponent - SUB_BUCKET_BITS));
+        return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
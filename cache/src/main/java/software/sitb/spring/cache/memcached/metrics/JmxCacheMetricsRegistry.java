@@ -0,0 +1,61 @@
+package software.sitb.spring.cache.memcached.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.sitb.spring.cache.memcached.MemcachedCache;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * 把缓存统计注册到JMX，ObjectName 为 {@code software.sitb.spring.cache:type=MemcachedCache,name=缓存名字}
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+public class JmxCacheMetricsRegistry implements CacheMetricsRegistry {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JmxCacheMetricsRegistry.class);
+
+    private static final String DOMAIN = "software.sitb.spring.cache";
+
+    private final MBeanServer server;
+
+    public JmxCacheMetricsRegistry() {
+        this(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    public JmxCacheMetricsRegistry(MBeanServer server) {
+        this.server = server;
+    }
+
+    @Override
+    public void register(MemcachedCache cache) {
+        try {
+            ObjectName objectName = objectName(cache);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(new CacheStatistics(cache), objectName);
+        } catch (JMException e) {
+            LOGGER.error("注册缓存统计失败[{}]", cache.getName(), e);
+        }
+    }
+
+    @Override
+    public void unregister(MemcachedCache cache) {
+        try {
+            ObjectName objectName = objectName(cache);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            LOGGER.error("取消注册缓存统计失败[{}]", cache.getName(), e);
+        }
+    }
+
+    private ObjectName objectName(MemcachedCache cache) throws JMException {
+        return new ObjectName(DOMAIN + ":type=MemcachedCache,name=" + ObjectName.quote(cache.getName()));
+    }
+}
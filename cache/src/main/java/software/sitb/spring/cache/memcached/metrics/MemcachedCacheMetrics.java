@@ -0,0 +1,147 @@
+package software.sitb.spring.cache.memcached.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个缓存的计数和延迟统计
+ *
+ * @author 田尘殇Sean sean.snow@live.com
+ */
+public class MemcachedCacheMetrics {
+
+    /**
+     * 统计延迟的操作
+     */
+    public enum Operation {
+        GET, PUT, GET_ALL, PUT_ALL, EVICT, CLEAR,
+        /**
+         * get(key, valueLoader) 中 valueLoader 的执行时间
+         */
+        LOAD,
+        /**
+         * compute、merge
+         */
+        COMPUTE,
+        /**
+         * incr、decr
+         */
+        COUNTER
+    }
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder remoteHitCount = new LongAdder();
+
+    private final LongAdder remoteMissCount = new LongAdder();
+
+    private final LongAdder putCount = new LongAdder();
+
+    private final LongAdder evictionCount = new LongAdder();
+
+    private final LongAdder errorCount = new LongAdder();
+
+    private final Histogram[] latencies = new Histogram[Operation.values().length];
+
+    /**
+     * 编码后值的大小，单位字节
+     */
+    private final Histogram valueSizes = new Histogram();
+
+    public MemcachedCacheMetrics() {
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new Histogram();
+        }
+    }
+
+    /**
+     * 记录操作耗时
+     *
+     * @param operation 操作
+     * @param startNanos 开始时间 {@link System#nanoTime()}
+     */
+    public void record(Operation operation, long startNanos) {
+        latencies[operation.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    public void hit() {
+        hitCount.increment();
+    }
+
+    public void hit(long count) {
+        hitCount.add(count);
+    }
+
+    public void miss() {
+        missCount.increment();
+    }
+
+    public void miss(long count) {
+        missCount.add(count);
+    }
+
+    public void remoteHit(long count) {
+        remoteHitCount.add(count);
+    }
+
+    public void remoteMiss(long count) {
+        remoteMissCount.add(count);
+    }
+
+    public void put() {
+        putCount.increment();
+    }
+
+    public void put(long count) {
+        putCount.add(count);
+    }
+
+    public void evict() {
+        evictionCount.increment();
+    }
+
+    public void error() {
+        errorCount.increment();
+    }
+
+    /**
+     * @param operation 操作
+     * @return 操作耗时直方图，单位纳秒
+     */
+    public Histogram getLatency(Operation operation) {
+        return latencies[operation.ordinal()];
+    }
+
+    public Histogram getValueSizes() {
+        return valueSizes;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getRemoteHitCount() {
+        return remoteHitCount.sum();
+    }
+
+    public long getRemoteMissCount() {
+        return remoteMissCount.sum();
+    }
+
+    public long getPutCount() {
+        return putCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    public long getErrorCount() {
+        return errorCount.sum();
+    }
+}